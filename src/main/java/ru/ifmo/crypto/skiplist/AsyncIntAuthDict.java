@@ -0,0 +1,245 @@
+package ru.ifmo.crypto.skiplist;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Asynchronous front end of {@link IntAuthDict}. Requests are executed by single writer thread,
+ * which drains bounded queue, keeps only the last pending update of every key and applies updates in
+ * sorted batches. Futures of a batch are completed right after its {@link Confirmation} is published;
+ * proofs requested in a batch are made after its updates.
+ * Wrapped dictionary must not be used directly while service is running.
+ */
+public class AsyncIntAuthDict implements AutoCloseable {
+    private static final int DEFAULT_QUEUE_CAPACITY = 1 << 16;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+    private static final Request STOP = new Request(Operation.STOP, 0);
+
+    private final IntAuthDict dict;
+    private final BlockingQueue<Request> queue;
+    private final int maxBatchSize;
+    private final Thread writer;
+    private volatile Confirmation confirmation;
+    private volatile boolean closed = false;
+    private final ReadWriteLock intake = new ReentrantReadWriteLock();  // Write lock is held to close the service
+
+    /**
+     * Creates service with default queue capacity and batch size
+     *
+     * @param dict wrapped dictionary
+     */
+    public AsyncIntAuthDict(IntAuthDict dict) {
+        this(dict, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param dict          wrapped dictionary
+     * @param queueCapacity number of pending requests, after which submitting threads are blocked
+     * @param maxBatchSize  maximal number of requests executed in one batch
+     */
+    public AsyncIntAuthDict(IntAuthDict dict, int queueCapacity, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        this.dict = dict;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.confirmation = dict.getConfirmation();
+        this.writer = new Thread(this::run, "AsyncIntAuthDict-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Schedules insertion of key
+     *
+     * @param elem element for inserting
+     * @return future of {@link Confirmation} published after the batch with insertion
+     * @throws IllegalArgumentException if elem is {@link Integer#MIN_VALUE}
+     */
+    public CompletableFuture<Confirmation> insert(int elem) {
+        IntAuthDict.checkKey(elem);  // Rejected here, so that the rest of its batch is applied
+        return submit(new Request(Operation.INSERT, elem)).update;
+    }
+
+    /**
+     * Schedules deletion of key
+     *
+     * @param elem element for deleting
+     * @return future of {@link Confirmation} published after the batch with deletion
+     */
+    public CompletableFuture<Confirmation> delete(int elem) {
+        return submit(new Request(Operation.DELETE, elem)).update;
+    }
+
+    /**
+     * Schedules creation of {@link Proof}
+     *
+     * @param key key for proof generation
+     * @return future of {@link Proof}, consistent with confirmation published by the same batch
+     * @throws IllegalArgumentException if key is {@link Integer#MIN_VALUE}
+     */
+    public CompletableFuture<Proof> makeProof(int key) {
+        IntAuthDict.checkKey(key);
+        return submit(new Request(Operation.PROOF, key)).proof;
+    }
+
+    /**
+     * @return last published {@link Confirmation}
+     */
+    public Confirmation getConfirmation() {
+        return confirmation;
+    }
+
+    /**
+     * Stops accepting requests, executes pending ones and waits for writer thread.
+     * If calling thread is interrupted while waiting, pending requests are failed instead
+     * and interrupt status of the thread is restored.
+     */
+    @Override
+    public void close() {
+        intake.writeLock().lock();
+        boolean first;
+        try {
+            first = !closed;
+            closed = true;
+        } finally {
+            intake.writeLock().unlock();
+        }
+        try {
+            if (first) {
+                queue.put(STOP);  // Every accepted request is already in the queue
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Check of closed flag and putting to the queue are atomic with respect to close
+    private Request submit(Request request) {
+        intake.readLock().lock();
+        try {
+            if (closed) {
+                request.fail(new RejectedExecutionException("Service is closed"));
+                return request;
+            }
+            queue.put(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.fail(e);
+        } finally {
+            intake.readLock().unlock();
+        }
+        return request;
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        boolean stopped = false;
+        while (!stopped) {
+            batch.clear();
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            int stop = batch.indexOf(STOP);
+            if (stop >= 0) {
+                stopped = true;
+                batch.subList(stop, batch.size()).clear();
+            }
+            execute(batch);
+        }
+        closed = true;
+        // Submitting threads may wait for space in the queue while holding intake lock, so it is drained meanwhile
+        while (!intake.writeLock().tryLock()) {
+            failPending();
+            Thread.yield();
+        }
+        try {
+            failPending();
+        } finally {
+            intake.writeLock().unlock();
+        }
+    }
+
+    // Requests, which were put after stop or were not executed because writer was interrupted
+    private void failPending() {
+        for (Request request = queue.poll(); request != null; request = queue.poll()) {
+            if (request != STOP) {
+                request.fail(new RejectedExecutionException("Service is closed"));
+            }
+        }
+    }
+
+    private void execute(List<Request> batch) {
+        Map<Integer, Operation> updates = new TreeMap<>();
+        for (Request request : batch) {
+            if (request.operation != Operation.PROOF) {
+                updates.put(request.key, request.operation);
+            }
+        }
+        List<Integer> deleted = new ArrayList<>();
+        List<Integer> inserted = new ArrayList<>();
+        for (Map.Entry<Integer, Operation> update : updates.entrySet()) {
+            if (update.getValue() == Operation.INSERT) {
+                inserted.add(update.getKey());
+            } else {
+                deleted.add(update.getKey());
+            }
+        }
+        Confirmation conf;
+        try {
+            dict.updateAll(deleted, inserted);  // Single rehash and timestamp per batch
+            conf = dict.getConfirmation();
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.fail(e);
+            }
+            return;
+        }
+        confirmation = conf;
+        for (Request request : batch) {
+            if (request.operation == Operation.PROOF) {
+                request.proof.complete(dict.makeProof(request.key));
+            } else {
+                request.update.complete(conf);
+            }
+        }
+    }
+
+    private enum Operation {
+        INSERT,
+        DELETE,
+        PROOF,
+        STOP
+    }
+
+    private static final class Request {
+        private final Operation operation;
+        private final int key;
+        private final CompletableFuture<Confirmation> update = new CompletableFuture<>();
+        private final CompletableFuture<Proof> proof = new CompletableFuture<>();
+
+        Request(Operation operation, int key) {
+            this.operation = operation;
+            this.key = key;
+        }
+
+        void fail(Throwable e) {
+            update.completeExceptionally(e);
+            proof.completeExceptionally(e);
+        }
+    }
+}
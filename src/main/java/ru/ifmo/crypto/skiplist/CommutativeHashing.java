@@ -1,29 +1,19 @@
 package ru.ifmo.crypto.skiplist;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
- * Wrapper for commutative version of SHA-256 hash function
+ * Wrapper for commutative version of {@link HashFunction}
  */
 public final class CommutativeHashing {
-    private static MessageDigest sha256;
-
-    static {
-        try {
-            sha256 = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            System.err.println("Hashing algorithm not found");
-        }
-    }
-
-    private static byte[] concat(final byte[] s1, final byte[] s2) {
-        byte[] res = new byte[s1.length + s2.length];
-        System.arraycopy(s1, 0, res, 0, s1.length);
-        System.arraycopy(s2, 0, res, s1.length, s2.length);
-        return res;
-    }
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    // Flipping sign bit of every byte turns signed byte order into unsigned one
+    private static final int INT_SIGN_BITS = 0x80808080;
+    private static final long LONG_SIGN_BITS = 0x8080808080808080L;
 
     /**
      * Calculates SHA-256. This version is commutative.
@@ -34,10 +24,46 @@ public final class CommutativeHashing {
      * @return byte array representing commutative SHA-256
      */
     public static byte[] SHA256(final byte[] s1, final byte[] s2) {
-        int res = Arrays.compare(s1, s2);
-        if (res > 0) {
-            return sha256.digest(concat(s2, s1));
+        return hash(HashFunction.SHA256, s1, s2);
+    }
+
+    /**
+     * Calculates commutative version of given hash function.
+     * Implementation: H(min(s1, s2), max(s1, s2))
+     *
+     * @param function hash function
+     * @param s1       first block
+     * @param s2       second block
+     * @return byte array representing commutative hash
+     */
+    public static byte[] hash(final HashFunction function, final byte[] s1, final byte[] s2) {
+        if (compare(s1, s2) > 0) {
+            return function.digest(s2, s1);
+        }
+        return function.digest(s1, s2);
+    }
+
+    /**
+     * Compares blocks like {@link Arrays#compare(byte[], byte[])}. Keys and digests of equal length
+     * are compared by whole words instead of bytes.
+     */
+    static int compare(final byte[] s1, final byte[] s2) {
+        if (s1.length == s2.length) {
+            if (s1.length == Integer.BYTES) {
+                return Integer.compareUnsigned((int) INTS.get(s1, 0) ^ INT_SIGN_BITS,
+                        (int) INTS.get(s2, 0) ^ INT_SIGN_BITS);
+            }
+            if ((s1.length & (Long.BYTES - 1)) == 0) {
+                for (int i = 0; i < s1.length; i += Long.BYTES) {
+                    long w1 = (long) LONGS.get(s1, i);
+                    long w2 = (long) LONGS.get(s2, i);
+                    if (w1 != w2) {
+                        return Long.compareUnsigned(w1 ^ LONG_SIGN_BITS, w2 ^ LONG_SIGN_BITS);
+                    }
+                }
+                return 0;
+            }
         }
-        return sha256.digest(concat(s1, s2));
+        return Arrays.compare(s1, s2);
     }
 }
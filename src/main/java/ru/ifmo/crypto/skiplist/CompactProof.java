@@ -0,0 +1,215 @@
+package ru.ifmo.crypto.skiplist;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact form of skip list proof. Kinds of sequence elements are stored as 2-bit flags, keys as
+ * integers and NIL elements as flags only. Key of present element is not stored, since validator knows it.
+ * Queried element, its predecessor and successor are parts of authenticated sequence, so validator checks
+ * membership or non-membership claim itself.
+ */
+public class CompactProof {
+    static final int KEY = 0;
+    static final int NIL = 1;
+    static final int HASH = 2;
+
+    private static final int PRESENT_FLAG = 1;
+    private static final int EXPANDED_FLAG = 2;
+
+    private final int element;
+    private final long timestamp;
+    private final boolean isPresent;
+    private final boolean expandedSuccessor;  // Successor is plateau node, its hash is given by key and right part
+    private final String hashAlgorithm;
+    private final int length;
+    private final byte[] kinds;
+    private final int[] keys;
+    private final byte[][] hashes;
+
+    private CompactProof(int element, long timestamp, boolean isPresent, boolean expandedSuccessor,
+                         String hashAlgorithm, int length, byte[] kinds, int[] keys, byte[][] hashes) {
+        this.element = element;
+        this.timestamp = timestamp;
+        this.isPresent = isPresent;
+        this.expandedSuccessor = expandedSuccessor;
+        this.hashAlgorithm = hashAlgorithm;
+        this.length = length;
+        this.kinds = kinds;
+        this.keys = keys;
+        this.hashes = hashes;
+    }
+
+    public int getElement() {
+        return element;
+    }
+
+    public boolean isPresent() {
+        return isPresent;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    boolean isExpandedSuccessor() {
+        return expandedSuccessor;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    int getKind(int i) {
+        return kinds[i >>> 2] >>> ((i & 3) << 1) & 3;
+    }
+
+    int[] getKeys() {
+        return keys;
+    }
+
+    byte[][] getHashes() {
+        return hashes;
+    }
+
+    /**
+     * Serializes proof. All hashes of proof must have the same length.
+     *
+     * @return binary form of proof
+     */
+    public byte[] encode() {
+        byte[] algorithm = hashAlgorithm.getBytes(StandardCharsets.UTF_8);
+        int hashLength = hashes.length == 0 ? 0 : hashes[0].length;
+        ByteBuffer buf = ByteBuffer.allocate(1 + Integer.BYTES + Long.BYTES + 1 + algorithm.length + 2
+                + kinds.length + 1 + keys.length * Integer.BYTES + hashes.length * hashLength);
+        buf.put((byte) ((isPresent ? PRESENT_FLAG : 0) | (expandedSuccessor ? EXPANDED_FLAG : 0)));
+        buf.putInt(element);
+        buf.putLong(timestamp);
+        buf.put((byte) algorithm.length);
+        buf.put(algorithm);
+        buf.putShort((short) length);
+        buf.put(kinds);
+        buf.put((byte) hashLength);
+        for (int key : keys) {
+            buf.putInt(key);
+        }
+        for (byte[] hash : hashes) {
+            if (hash.length != hashLength) {
+                throw new IllegalStateException("Hashes of proof have different lengths");
+            }
+            buf.put(hash);
+        }
+        return buf.array();
+    }
+
+    /**
+     * Deserializes proof, created by {@link #encode()}
+     *
+     * @param bytes binary form of proof
+     * @return decoded proof
+     * @throws IllegalArgumentException if bytes are not valid proof
+     */
+    public static CompactProof decode(byte[] bytes) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            int flags = buf.get();
+            int element = buf.getInt();
+            long timestamp = buf.getLong();
+            byte[] algorithm = new byte[buf.get() & 0xFF];
+            buf.get(algorithm);
+            int length = buf.getShort() & 0xFFFF;
+            byte[] kinds = new byte[(length + 3) >>> 2];
+            buf.get(kinds);
+            int hashLength = buf.get() & 0xFF;
+            Builder builder = new Builder();
+            for (int i = 0; i < length; i++) {
+                switch (kinds[i >>> 2] >>> ((i & 3) << 1) & 3) {
+                    case KEY:
+                        builder.addKey(0);
+                        break;
+                    case NIL:
+                        builder.addNil();
+                        break;
+                    case HASH:
+                        if (hashLength == 0) {
+                            throw new IllegalArgumentException("Empty hash in proof");
+                        }
+                        builder.addHash(new byte[hashLength]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown kind of proof element");
+                }
+            }
+            for (int i = 0; i < builder.keyCount; i++) {
+                builder.keys[i] = buf.getInt();
+            }
+            for (int i = 0; i < builder.hashCount; i++) {
+                buf.get(builder.hashes[i]);
+            }
+            if (buf.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes after proof");
+            }
+            return builder.build(element, timestamp, (flags & PRESENT_FLAG) != 0, (flags & EXPANDED_FLAG) != 0,
+                    new String(algorithm, StandardCharsets.UTF_8));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed proof", e);
+        }
+    }
+
+    /**
+     * Accumulates elements of sequence in validation order
+     */
+    static final class Builder {
+        private int length = 0;
+        private byte[] kinds = new byte[8];
+        private int keyCount = 0;
+        private int[] keys = new int[8];
+        private int hashCount = 0;
+        private byte[][] hashes = new byte[8][];
+
+        private void addKind(int kind) {
+            if (length >>> 2 == kinds.length) {
+                kinds = Arrays.copyOf(kinds, kinds.length * 2);
+            }
+            kinds[length >>> 2] |= kind << ((length & 3) << 1);
+            length++;
+        }
+
+        void addKey(int key) {
+            addKind(KEY);
+            if (keyCount == keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+            keys[keyCount++] = key;
+        }
+
+        void addNil() {
+            addKind(NIL);
+        }
+
+        void addHash(byte[] hash) {
+            if (hash.length == 0) {
+                addNil();
+                return;
+            }
+            addKind(HASH);
+            if (hashCount == hashes.length) {
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            hashes[hashCount++] = hash;
+        }
+
+        CompactProof build(int element, long timestamp, boolean isPresent, boolean expandedSuccessor,
+                           String hashAlgorithm) {
+            return new CompactProof(element, timestamp, isPresent, expandedSuccessor, hashAlgorithm, length,
+                    Arrays.copyOf(kinds, (length + 3) >>> 2), Arrays.copyOf(keys, keyCount),
+                    Arrays.copyOf(hashes, hashCount));
+        }
+    }
+}
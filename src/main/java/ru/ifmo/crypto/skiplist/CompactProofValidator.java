@@ -0,0 +1,8 @@
+package ru.ifmo.crypto.skiplist;
+
+/**
+ * Validator, which also checks {@link CompactProof}
+ */
+public interface CompactProofValidator extends Validator {
+    ValidationResult validate(final CompactProof proof, final Confirmation conf);
+}
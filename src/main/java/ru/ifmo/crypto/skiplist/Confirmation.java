@@ -3,10 +3,16 @@ package ru.ifmo.crypto.skiplist;
 public class Confirmation {
     private final long timestamp;
     private final byte[] hash;
+    private final String hashAlgorithm;
 
     public Confirmation(long timestamp, byte[] hash) {
+        this(timestamp, hash, HashFunction.SHA256.getName());
+    }
+
+    public Confirmation(long timestamp, byte[] hash, String hashAlgorithm) {
         this.hash = hash;
         this.timestamp = timestamp;
+        this.hashAlgorithm = hashAlgorithm;
     }
 
     public long getTimestamp() {
@@ -16,4 +22,8 @@ public class Confirmation {
     public byte[] getHash() {
         return hash;
     }
+
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
 }
@@ -0,0 +1,29 @@
+package ru.ifmo.crypto.skiplist;
+
+import java.util.List;
+
+/**
+ * In-process {@link SyncPeer} backed by {@link IntAuthDict}
+ */
+public class DictSyncPeer implements SyncPeer {
+    private final IntAuthDict dict;
+
+    public DictSyncPeer(IntAuthDict dict) {
+        this.dict = dict;
+    }
+
+    @Override
+    public Confirmation getConfirmation() {
+        return dict.getConfirmation();
+    }
+
+    @Override
+    public int getHeight() {
+        return dict.getHeight();
+    }
+
+    @Override
+    public List<NodeDigest> getDigests(int level, long from, long to) {
+        return dict.getDigests(level, from, to);
+    }
+}
@@ -0,0 +1,110 @@
+package ru.ifmo.crypto.skiplist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Brings local {@link IntAuthDict} to the state of remote replica. Roots are compared first, then
+ * layers are descended only under nodes whose hashes differ, so the cost is proportional to the number
+ * of differing keys when both replicas are canonical with the same seed (see {@link IntAuthDict#IntAuthDict(long)}).
+ * For non-canonical replicas the result is still correct, but most of the keys are transferred.
+ */
+public class DictSynchronizer {
+    private final IntAuthDict local;
+    private final SyncPeer remote;
+    private final List<Integer> toInsert = new ArrayList<>();
+    private final List<Integer> toDelete = new ArrayList<>();
+    private int requests = 0;
+    private long transferredDigests = 0;
+
+    private DictSynchronizer(IntAuthDict local, SyncPeer remote) {
+        this.local = local;
+        this.remote = remote;
+    }
+
+    /**
+     * Applies to {@code local} all insertions and deletions needed to make it equal to {@code remote}
+     *
+     * @param local  replica for updating
+     * @param remote source replica
+     * @return {@link SyncResult} with synchronization statistics
+     */
+    public static SyncResult synchronize(IntAuthDict local, SyncPeer remote) {
+        DictSynchronizer sync = new DictSynchronizer(local, remote);
+        sync.run();
+        return new SyncResult(sync.toInsert.size(), sync.toDelete.size(), sync.requests, sync.transferredDigests);
+    }
+
+    private void run() {
+        Confirmation conf = remote.getConfirmation();
+        requests++;
+        if (!conf.getHashAlgorithm().equals(local.getConfirmation().getHashAlgorithm())) {
+            throw new IllegalArgumentException("Replicas use different hash functions: "
+                    + conf.getHashAlgorithm() + " and " + local.getConfirmation().getHashAlgorithm());
+        }
+        if (Arrays.equals(conf.getHash(), local.getConfirmation().getHash())) {
+            return;
+        }
+        int level = Math.max(local.getHeight(), remote.getHeight());
+        requests++;
+        reconcile(level, NodeDigest.HEAD, Long.MAX_VALUE);
+        for (int key : toDelete) {
+            local.delete(key);
+        }
+        for (int key : toInsert) {
+            local.insert(key);
+        }
+    }
+
+    private void reconcile(int level, long from, long to) {
+        List<NodeDigest> theirs = remote.getDigests(level, from, to);
+        requests++;
+        transferredDigests += theirs.size();
+        List<NodeDigest> ours = local.getDigests(level, from, to);
+        if (level == 0) {
+            diffKeys(ours, theirs);
+            return;
+        }
+        if (theirs.isEmpty() || theirs.get(0).getKey() > from) {
+            reconcile(level - 1, from, theirs.isEmpty() ? to : theirs.get(0).getKey());
+        }
+        int j = 0;
+        for (int i = 0; i < theirs.size(); i++) {
+            NodeDigest node = theirs.get(i);
+            long end = i + 1 < theirs.size() ? theirs.get(i + 1).getKey() : to;
+            while (j < ours.size() && ours.get(j).getKey() < node.getKey()) {
+                j++;
+            }
+            // Equal hashes cover equal keys up to the next node of remote layer
+            boolean same = j < ours.size() && ours.get(j).getKey() == node.getKey()
+                    && Arrays.equals(ours.get(j).getHash(), node.getHash());
+            if (!same) {
+                reconcile(level - 1, node.getKey(), end);
+            }
+        }
+    }
+
+    private void diffKeys(List<NodeDigest> ours, List<NodeDigest> theirs) {
+        int i = 0;
+        int j = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            long our = i < ours.size() ? ours.get(i).getKey() : Long.MAX_VALUE;
+            long their = j < theirs.size() ? theirs.get(j).getKey() : Long.MAX_VALUE;
+            if (our == their) {
+                i++;
+                j++;
+            } else if (our < their) {
+                if (our != NodeDigest.HEAD) {
+                    toDelete.add((int) our);
+                }
+                i++;
+            } else {
+                if (their != NodeDigest.HEAD) {
+                    toInsert.add((int) their);
+                }
+                j++;
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.ifmo.crypto.skiplist;
+
+/**
+ * Hash function used for authentication of skip list. Implementations must be thread-safe.
+ *
+ * @see CommutativeHashing
+ */
+public interface HashFunction {
+    HashFunction SHA256 = new MessageDigestHashFunction("SHA-256");
+
+    HashFunction SHA512_256 = new MessageDigestHashFunction("SHA-512/256");
+
+    HashFunction BLAKE2B_256 = new Blake2bHashFunction(32);
+
+    /**
+     * @return name of algorithm, recorded in {@link Confirmation} and {@link Proof}
+     */
+    String getName();
+
+    byte[] digest(byte[] input);
+
+    /**
+     * Calculates digest of concatenation of two blocks. Implementations should override it
+     * to avoid copying of blocks.
+     *
+     * @param first  first block
+     * @param second second block
+     * @return digest of first || second
+     */
+    default byte[] digest(byte[] first, byte[] second) {
+        byte[] res = new byte[first.length + second.length];
+        System.arraycopy(first, 0, res, 0, first.length);
+        System.arraycopy(second, 0, res, first.length, second.length);
+        return digest(res);
+    }
+}
@@ -2,28 +2,60 @@ package ru.ifmo.crypto.skiplist;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
- * Implementation for {@link AuthDict} interface of {@link Integer} elements
+ * Implementation for {@link AuthDict} interface of {@link Integer} elements.
+ * {@link Integer#MIN_VALUE} is the key of head sentinels, so it can not be stored or proven.
  *
  * @author Daniil Boger (Sagolbah)
  */
-public class IntAuthDict implements AuthDict<Integer> {
+public class IntAuthDict implements AuthDict<Integer>, Iterable<Integer> {
     private final Random rng = new Random();
     private static final byte[] NIL = new byte[]{};
+    private static final long CURRENT = Long.MAX_VALUE;  // Timestamp for reading of current state
+    private static final int PARALLEL_THRESHOLD = 1 << 16;  // Nodes to rehash, starting from which it is parallel
+    private static final int PARALLEL_LEVEL = 10;  // Lowest level, whose plateau subtrees are hashed by separate tasks
+    private final boolean canonical;
+    private final long seed;
+    private final HashFunction hashFunction;
     private long lastChangeTimestamp = 0;
+    private int size = 0;
+    private int height = 0;  // Level of root layer, bottom layer has level 0
     private Node root;
+    private final TreeMap<Long, Integer> pinnedTimestamps = new TreeMap<>();  // Timestamps of open snapshots
+    private final Map<Node, Version> versions = new IdentityHashMap<>();  // Saved states, newest first
+    private final TreeMap<Long, List<Node>> savedAt = new TreeMap<>();  // Nodes by timestamps of their saved states
 
     /**
      * Creates empty {@link IntAuthDict}
      */
     public IntAuthDict() {
-        init();
-        createHashes(root);
+        this(HashFunction.SHA256);
     }
 
-    private void init() {
-        root = makeInfinityPair();
+    /**
+     * Creates empty {@link IntAuthDict} authenticated with given hash function
+     *
+     * @param hashFunction hash function for authentication
+     */
+    public IntAuthDict(final HashFunction hashFunction) {
+        this(Collections.emptyList(), false, 0, hashFunction);
+    }
+
+    /**
+     * Creates empty canonical {@link IntAuthDict}. Tower heights of canonical dictionary are derived
+     * from keys and seed, so dictionaries with equal seeds and equal sets of keys have the same structure
+     * and the same {@link Confirmation} hash, regardless of the order of operations.
+     *
+     * @param seed seed of tower heights, shared by all replicas
+     */
+    public IntAuthDict(final long seed) {
+        this(Collections.emptyList(), seed, HashFunction.SHA256);
     }
 
     /**
@@ -32,13 +64,59 @@ public class IntAuthDict implements AuthDict<Integer> {
      * @param source list of initial values
      */
     public IntAuthDict(final List<Integer> source) {
+        this(source, HashFunction.SHA256);
+    }
+
+    /**
+     * Creates {@link IntAuthDict} with given values authenticated with given hash function
+     *
+     * @param source       list of initial values
+     * @param hashFunction hash function for authentication
+     */
+    public IntAuthDict(final List<Integer> source, final HashFunction hashFunction) {
+        this(source, false, 0, hashFunction);
+    }
+
+    /**
+     * Creates canonical {@link IntAuthDict} with given values
+     *
+     * @param source list of initial values
+     * @param seed   seed of tower heights, shared by all replicas
+     * @see #IntAuthDict(long)
+     */
+    public IntAuthDict(final List<Integer> source, final long seed) {
+        this(source, seed, HashFunction.SHA256);
+    }
+
+    /**
+     * Creates canonical {@link IntAuthDict} with given values authenticated with given hash function
+     *
+     * @param source       list of initial values
+     * @param seed         seed of tower heights, shared by all replicas
+     * @param hashFunction hash function for authentication
+     * @see #IntAuthDict(long)
+     */
+    public IntAuthDict(final List<Integer> source, final long seed, final HashFunction hashFunction) {
+        this(source, true, seed, hashFunction);
+    }
+
+    private IntAuthDict(final List<Integer> source, final boolean canonical, final long seed,
+                        final HashFunction hashFunction) {
+        this.canonical = canonical;
+        this.seed = seed;
+        this.hashFunction = hashFunction;
         init();
         build(source);
     }
 
+    private void init() {
+        root = makeInfinityPair();
+    }
+
     private void build(final List<Integer> source) {
         buildBottom(new ArrayList<>(source));
         Node lastLayer = root;
+        int level = 0;
         while (isLayerNonEmpty(lastLayer)) {
             boolean changed = false;
             Node nextLayer = makeInfinityPair();
@@ -47,7 +125,7 @@ public class IntAuthDict implements AuthDict<Integer> {
             Node lastInLayer = nextLayer;
             Node cur = lastLayer.getRight();
             while (cur.getRight() != null) {
-                if (rng.nextBoolean()) {  // Keep alive
+                if (promote(cur.getData(), level)) {  // Keep alive
                     Node newNode = new Node(cur.getData(), lastInLayer.right, cur);
                     lastInLayer.setRight(newNode);
                     lastInLayer = lastInLayer.right;
@@ -60,23 +138,82 @@ public class IntAuthDict implements AuthDict<Integer> {
             }
             lastInLayer.getRight().setDown(cur);  // Link right infinity
             cur.setPlateau(false);
-            if (changed) {
+            if (changed || canonical) {  // Canonical coins can not be tossed again
                 root = nextLayer;
+                height = ++level;
             }
             lastLayer = root;
         }
-        createHashes(lastLayer);
+        if (canonical && height == 0) {  // Hash of empty canonical dictionary must not depend on history
+            addLayer();
+        }
+        rehash(null, size);
     }
 
     private void buildBottom(final List<Integer> source) {
         Collections.sort(source);
         Node cur = root;
         for (int key : source) {
+            checkKey(key);
+            if (cur != root && cur.getData() == key) {  // Duplicates are stored once
+                continue;
+            }
             cur.setRight(new Node(key, cur.getRight(), null));
             cur = cur.getRight();
+            size++;
+        }
+    }
+
+
+    // Head sentinels have key Integer.MIN_VALUE, so membership of such key could be forged
+    static void checkKey(final int key) {
+        if (key == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Integer.MIN_VALUE is reserved for head sentinel");
         }
     }
 
+    private boolean promote(final int key, final int level) {
+        if (!canonical) {
+            return rng.nextBoolean();
+        }
+        return level < Long.SIZE && (coins(seed, key) >>> level & 1) != 0;
+    }
+
+    private int towerHeight(final int key) {
+        if (canonical) {
+            return Long.numberOfTrailingZeros(~coins(seed, key));
+        }
+        int res = 0;
+        while (res < height && rng.nextBoolean()) {
+            res++;
+        }
+        return res;
+    }
+
+    // Coin tosses of canonical tower: bit i is set <=> tower is promoted from level i
+    static long coins(final long seed, final int key) {
+        // SplitMix64 finalizer
+        long z = seed + (key & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private void addLayer() {
+        Node rightSentinel = root.getRight();
+        while (rightSentinel.getRight() != null) {
+            rightSentinel = rightSentinel.getRight();
+        }
+        Node newLayer = makeInfinityPair();
+        save(root);
+        save(rightSentinel);
+        root.setPlateau(false);
+        rightSentinel.setPlateau(false);
+        newLayer.setDown(root);
+        newLayer.getRight().setDown(rightSentinel);
+        root = newLayer;
+        height++;
+    }
 
     private Node makeInfinityPair() {
         Node rightSentinel = new Node(Integer.MAX_VALUE);
@@ -89,13 +226,17 @@ public class IntAuthDict implements AuthDict<Integer> {
 
     // Public - for testing purposes only.
     public boolean find(Integer key) {
+        return find(root, CURRENT, key);
+    }
+
+    private boolean find(final Node root, final long timestamp, final int key) {
         Node cur = root;
         while (true) {
-            while (cur.getRight().getData() < key) {
-                cur = cur.getRight();
+            while (getRight(cur, timestamp).getData() < key) {
+                cur = getRight(cur, timestamp);
             }
             if (cur.getDown() == null) {
-                return cur.getRight().getData() == key;
+                return getRight(cur, timestamp).getData() == key;
             }
             cur = cur.getDown();
         }
@@ -105,27 +246,22 @@ public class IntAuthDict implements AuthDict<Integer> {
      * Inserts key in {@link IntAuthDict} and rehashes skip list
      *
      * @param elem element for inserting
+     * @throws IllegalArgumentException if elem is {@link Integer#MIN_VALUE}
      */
     @Override
     public void insert(Integer elem) {
+        checkKey(elem);
         if (find(elem)) {
             return;
         }
-        Node lastLayer = root;
-        List<Node> backtrack = new ArrayList<>();
-        insertImpl(lastLayer, elem, backtrack);
-        if (isLayerNonEmpty(lastLayer)) {
-            Node newLayer = makeInfinityPair();
-            lastLayer.setPlateau(false);
-            lastLayer.getRight().getRight().setPlateau(false);
-            newLayer.setDown(lastLayer);
-            newLayer.getRight().setDown(lastLayer.getRight().getRight());
-            doBacktracking(backtrack);
-            recalcHash(newLayer);
-            root = newLayer;
-        } else {
-            doBacktracking(backtrack);
+        int towerHeight = towerHeight(elem);
+        while (height <= towerHeight) {  // Root layer stays empty
+            addLayer();
         }
+        List<Node> backtrack = new ArrayList<>();
+        insertImpl(root, elem, height, towerHeight, backtrack);
+        doBacktracking(backtrack);
+        size++;
         lastChangeTimestamp++;
     }
 
@@ -140,24 +276,26 @@ public class IntAuthDict implements AuthDict<Integer> {
     }
 
 
-    private Node insertImpl(Node cur, int key, List<Node> backtrack) {
+    private Node insertImpl(Node cur, int key, int level, int towerHeight, List<Node> backtrack) {
         backtrack.add(cur);
         while (cur.getRight().getData() < key) {
             cur = cur.getRight();
             backtrack.add(cur);
         }
         if (cur.getDown() == null) {
+            save(cur);
             cur.setRight(new Node(key, cur.getRight(), null));
         } else {
-            Node res = insertImpl(cur.getDown(), key, backtrack);
+            Node res = insertImpl(cur.getDown(), key, level - 1, towerHeight, backtrack);
             if (res != null) {
+                save(cur);
                 cur.setRight(new Node(key, cur.getRight(), res));
                 res.setPlateau(false);
             } else {
                 return null;
             }
         }
-        return rng.nextBoolean() ? cur.getRight() : null;
+        return level < towerHeight ? cur.getRight() : null;
     }
 
     /**
@@ -170,45 +308,291 @@ public class IntAuthDict implements AuthDict<Integer> {
         if (!find(elem)) {
             return;
         }
+        Deque<Node> backtrack = deleteImpl(elem);
+        while (!backtrack.isEmpty()) {
+            recalcHash(backtrack.pop());
+        }
+        size--;
+        lastChangeTimestamp++;
+    }
+
+    // Unlinks tower of key from every layer, returns search path without rehashing it
+    private Deque<Node> deleteImpl(final int key) {
         Node cur = root;
         Deque<Node> backtrack = new ArrayDeque<>();
         while (true) {
             backtrack.push(cur);
-            while (cur.getRight().getData() < elem) {
+            while (cur.getRight().getData() < key) {
                 cur = cur.getRight();
                 backtrack.push(cur);
             }
-            if (cur.getDown() == null) {
-                // Deleting cur.right
+            if (cur.getRight().getData() == key) {
+                save(cur);
                 cur.setRight(cur.getRight().getRight());
-                recalcHash(cur);
-                break;
+            }
+            if (cur.getDown() == null) {
+                return backtrack;
             }
             cur = cur.getDown();
         }
-        while (!backtrack.isEmpty()) {
-            Node nextNode = backtrack.pop();
-            if (nextNode.getRight().getData() == elem) {
-                nextNode.setRight(nextNode.getRight().getRight());
+    }
+
+    /**
+     * Inserts all given keys in {@link IntAuthDict} and rehashes skip list once.
+     * The whole batch gets single timestamp. Hashes of large batches are recomputed in parallel.
+     *
+     * @param elems elements for inserting
+     * @throws IllegalArgumentException if elems contain {@link Integer#MIN_VALUE}, nothing is inserted then
+     */
+    public void insertAll(final Collection<Integer> elems) {
+        elems.forEach(IntAuthDict::checkKey);
+        Set<Node> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+        insertAll(elems, dirty);
+        rehashDirty(dirty);
+    }
+
+    /**
+     * Removes all given keys from {@link IntAuthDict} and rehashes skip list once.
+     * The whole batch gets single timestamp. Hashes of large batches are recomputed in parallel.
+     *
+     * @param elems elements for deleting
+     */
+    public void deleteAll(final Collection<Integer> elems) {
+        Set<Node> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+        deleteAll(elems, dirty);
+        rehashDirty(dirty);
+    }
+
+    /**
+     * Removes given keys, then inserts given keys in {@link IntAuthDict} and rehashes skip list once.
+     * The whole batch gets single timestamp, as if it was single call of {@link #deleteAll} or {@link #insertAll}.
+     *
+     * @param deleted  elements for deleting
+     * @param inserted elements for inserting
+     * @throws IllegalArgumentException if inserted elements contain {@link Integer#MIN_VALUE}, nothing is changed then
+     */
+    public void updateAll(final Collection<Integer> deleted, final Collection<Integer> inserted) {
+        inserted.forEach(IntAuthDict::checkKey);
+        Set<Node> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+        deleteAll(deleted, dirty);
+        insertAll(inserted, dirty);
+        rehashDirty(dirty);
+    }
+
+    // Nodes which hashes must be recomputed are added to dirty
+    private void insertAll(final Collection<Integer> elems, final Set<Node> dirty) {
+        for (int elem : elems) {
+            if (find(elem)) {
+                continue;
+            }
+            int towerHeight = towerHeight(elem);
+            while (height <= towerHeight) {
+                addLayer();
             }
-            recalcHash(nextNode);
+            List<Node> backtrack = new ArrayList<>();
+            insertImpl(root, elem, height, towerHeight, backtrack);
+            for (Node rec : backtrack) {
+                dirty.add(rec);
+                if (rec.getRight() != null) {
+                    dirty.add(rec.getRight());
+                }
+            }
+            size++;
+        }
+    }
+
+    private void deleteAll(final Collection<Integer> elems, final Set<Node> dirty) {
+        for (int elem : elems) {
+            if (!find(elem)) {
+                continue;
+            }
+            dirty.addAll(deleteImpl(elem));
+            size--;
+        }
+    }
+
+    /**
+     * Removes all keys in [from, to) from {@link IntAuthDict}. Range is unlinked from every layer at once,
+     * only search path of {@code from} is rehashed.
+     *
+     * @param from inclusive lower bound
+     * @param to   exclusive upper bound
+     * @return number of removed keys
+     */
+    public int deleteRange(final int from, final int to) {
+        Set<Node> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+        int removed = unlinkRange(from, to, dirty);
+        if (removed > 0) {
+            rehashDirty(dirty);
         }
+        return removed;
+    }
+
+    /**
+     * Removes all keys out of [from, to) from {@link IntAuthDict}. Both remaining ranges are unlinked
+     * from every layer at once, skip list is rehashed once.
+     *
+     * @param from inclusive lower bound
+     * @param to   exclusive upper bound
+     * @return number of removed keys
+     */
+    public int retainRange(final int from, final int to) {
+        Set<Node> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+        int removed = unlinkRange(Integer.MIN_VALUE, from, dirty)
+                + unlinkRange(Math.max(from, to), Integer.MAX_VALUE, dirty);
+        if (removed > 0) {
+            rehashDirty(dirty);
+        }
+        return removed;
+    }
+
+    // Links last node less than from to first node not less than to on every layer.
+    // Towers inside the range are removed completely, so plateau flags of the remaining nodes do not change.
+    private int unlinkRange(final int from, final int to, final Set<Node> dirty) {
+        if (from >= to) {
+            return 0;
+        }
+        int removed = 0;
+        Node cur = root;
+        while (true) {
+            dirty.add(cur);
+            while (cur.getRight().getData() < from) {
+                cur = cur.getRight();
+                dirty.add(cur);
+            }
+            Node next = cur.getRight();
+            while (next.getData() < to) {
+                next = next.getRight();
+                if (cur.getDown() == null) {
+                    removed++;
+                }
+            }
+            if (next != cur.getRight()) {
+                save(cur);
+                cur.setRight(next);
+            }
+            if (cur.getDown() == null) {
+                size -= removed;
+                return removed;
+            }
+            cur = cur.getDown();
+        }
+    }
+
+    private void rehashDirty(final Set<Node> dirty) {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        for (Node v : dirty) {  // Tasks do not touch saved states
+            save(v);
+        }
+        rehash(dirty, dirty.size());
         lastChangeTimestamp++;
     }
 
+    // Recomputes hashes of dirty nodes (all nodes if dirty is null), in parallel if there are many of them
+    private void rehash(final Set<Node> dirty, final int nodes) {
+        if (nodes < PARALLEL_THRESHOLD) {
+            new HashTask(root, height, dirty, Integer.MAX_VALUE).compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(new HashTask(root, height, dirty, PARALLEL_LEVEL));
+        }
+    }
+
+    /**
+     * Returns number of keys in {@link IntAuthDict}
+     *
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates iterator over keys in ascending order. Iterator fails with
+     * {@link ConcurrentModificationException} if dictionary was changed after its creation.
+     *
+     * @return iterator over all keys
+     */
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    /**
+     * Creates iterator over keys which are greater or equal than given bound, in ascending order.
+     *
+     * @param from inclusive lower bound
+     * @return iterator over keys starting from {@code from}
+     */
+    public PrimitiveIterator.OfInt iterator(final int from) {
+        return Spliterators.iterator(spliterator(from));
+    }
+
+    /**
+     * Creates {@link Spliterator} over keys in ascending order. Spliterator is split along the towers
+     * of upper layers, so parallel streams do not walk the bottom layer to find halves.
+     *
+     * @return spliterator over all keys
+     */
+    @Override
+    public Spliterator.OfInt spliterator() {
+        return new KeySpliterator(root, true, Integer.MIN_VALUE, Integer.MAX_VALUE, size, lastChangeTimestamp);
+    }
+
+    /**
+     * Creates {@link Spliterator} over keys which are greater or equal than given bound.
+     *
+     * @param from inclusive lower bound
+     * @return spliterator over keys starting from {@code from}
+     */
+    public Spliterator.OfInt spliterator(final int from) {
+        Node cur = root;
+        while (cur.getRight().getData() < from) {
+            cur = cur.getRight();
+        }
+        return new KeySpliterator(cur, cur == root, from, Integer.MAX_VALUE, size, lastChangeTimestamp);
+    }
+
+    /**
+     * Creates sequential {@link IntStream} of keys in ascending order.
+     * Use {@link IntStream#parallel()} for parallel scan.
+     *
+     * @return stream of all keys
+     */
+    public IntStream stream() {
+        return StreamSupport.intStream(spliterator(), false);
+    }
+
+    /**
+     * Creates sequential {@link IntStream} of keys which are greater or equal than given bound.
+     *
+     * @param from inclusive lower bound
+     * @return stream of keys starting from {@code from}
+     */
+    public IntStream stream(final int from) {
+        return StreamSupport.intStream(spliterator(from), false);
+    }
+
     /**
      * Creates {@link Proof} for given key.
      *
      * @param key key for proof generation
      * @return {@link Proof} for given key
+     * @throws IllegalArgumentException if key is {@link Integer#MIN_VALUE}
      */
     public Proof makeProof(final Integer key) {
+        return makeProof(root, lastChangeTimestamp, CURRENT, key);
+    }
+
+    // Nodes of search path from bottom to root
+    private List<Node> proofPath(final Node root, final long timestamp, final int key) {
         List<Node> pList = new ArrayList<>();
         Node cur = root;
         pList.add(cur);
         while (true) {
-            while (cur.getRight().getData() <= key) {
-                cur = cur.getRight();
+            while (getRight(cur, timestamp).getData() <= key) {
+                cur = getRight(cur, timestamp);
                 pList.add(cur);
             }
             if (cur.getDown() == null) {
@@ -218,14 +602,21 @@ public class IntAuthDict implements AuthDict<Integer> {
             pList.add(cur);
         }
         Collections.reverse(pList);
+        return pList;
+    }
+
+    private Proof makeProof(final Node root, final long proofTimestamp, final long timestamp, final int key) {
+        checkKey(key);
+        List<Node> pList = proofPath(root, timestamp, key);
+        Node cur = pList.get(0);
         List<byte[]> qList = new ArrayList<>();
         // Creating Q array with proof
-        Node cur_w = pList.get(0).getRight();
+        Node cur_w = getRight(pList.get(0), timestamp);
         boolean isPresent = cur.getData() == key;
-        if (cur_w.isPlateau()) {
-            qList.add(cur_w.getHash());
+        if (isPlateau(cur_w, timestamp)) {
+            qList.add(getHash(cur_w, timestamp));
         } else {
-            if (cur_w.getRight() == null) {
+            if (getRight(cur_w, timestamp) == null) {
                 qList.add(NIL);
             } else {
                 qList.add(intToBytes(cur_w.getData()));
@@ -234,39 +625,181 @@ public class IntAuthDict implements AuthDict<Integer> {
         qList.add(intToBytes(cur.getData()));
         for (int i = 1; i < pList.size(); i++) {
             Node cur_v = pList.get(i);
-            cur_w = cur_v.getRight();
-            if (cur_w.isPlateau()) {
+            cur_w = getRight(cur_v, timestamp);
+            if (isPlateau(cur_w, timestamp)) {
                 if (cur_w != pList.get(i - 1)) {
-                    qList.add(cur_w.getHash());
+                    qList.add(getHash(cur_w, timestamp));
                 } else {
                     if (cur_v.getDown() == null) {
                         qList.add(intToBytes(cur_v.getData()));
                     } else {
-                        qList.add(cur_v.getDown().getHash());
+                        qList.add(getHash(cur_v.getDown(), timestamp));
                     }
                 }
             }
         }
-        return new Proof(key, lastChangeTimestamp, qList, isPresent);
+        return new Proof(key, proofTimestamp, qList, isPresent, hashFunction.getName());
+    }
+
+    /**
+     * Creates {@link CompactProof} for given key.
+     *
+     * @param key key for proof generation
+     * @return {@link CompactProof} for given key
+     * @throws IllegalArgumentException if key is {@link Integer#MIN_VALUE}
+     */
+    public CompactProof makeCompactProof(final int key) {
+        return makeCompactProof(root, lastChangeTimestamp, CURRENT, key);
+    }
+
+    private CompactProof makeCompactProof(final Node root, final long proofTimestamp, final long timestamp,
+                                          final int key) {
+        checkKey(key);
+        List<Node> pList = proofPath(root, timestamp, key);
+        Node cur = pList.get(0);
+        boolean isPresent = cur.getData() == key;
+        CompactProof.Builder builder = new CompactProof.Builder();
+        // Successor is given by key, so its hash is recalculated by validator
+        Node cur_w = getRight(cur, timestamp);
+        Node next = getRight(cur_w, timestamp);
+        boolean expanded = next != null && isPlateau(cur_w, timestamp);
+        if (next == null) {
+            builder.addNil();
+        } else {
+            builder.addKey(cur_w.getData());
+        }
+        if (expanded) {
+            if (isPlateau(next, timestamp)) {
+                builder.addHash(getHash(next, timestamp));
+            } else if (getRight(next, timestamp) == null) {
+                builder.addNil();
+            } else {
+                builder.addKey(next.getData());
+            }
+        }
+        if (!isPresent) {
+            builder.addKey(cur.getData());
+        }
+        for (int i = 1; i < pList.size(); i++) {
+            Node cur_v = pList.get(i);
+            cur_w = getRight(cur_v, timestamp);
+            if (isPlateau(cur_w, timestamp)) {
+                if (cur_w != pList.get(i - 1)) {
+                    builder.addHash(getHash(cur_w, timestamp));
+                } else if (cur_v.getDown() == null) {
+                    builder.addKey(cur_v.getData());
+                } else {
+                    builder.addHash(getHash(cur_v.getDown(), timestamp));
+                }
+            }
+        }
+        return builder.build(key, proofTimestamp, isPresent, expanded, hashFunction.getName());
+    }
+
+    /**
+     * Creates read-only {@link Snapshot} of current state. Snapshot must be closed after use,
+     * otherwise states of changed nodes are kept for it.
+     *
+     * @return snapshot pinned to current timestamp
+     */
+    public Snapshot snapshot() {
+        pinnedTimestamps.merge(lastChangeTimestamp, 1, Integer::sum);
+        return new Snapshot(root, lastChangeTimestamp);
+    }
+
+    private void release(final long timestamp) {
+        if (pinnedTimestamps.merge(timestamp, -1, Integer::sum) == 0) {
+            pinnedTimestamps.remove(timestamp);
+        }
+        if (pinnedTimestamps.isEmpty()) {
+            versions.clear();
+            savedAt.clear();
+            return;
+        }
+        // States saved before the oldest remaining snapshot are not needed anymore
+        long oldestPinned = pinnedTimestamps.firstKey();
+        SortedMap<Long, List<Node>> expired = savedAt.headMap(oldestPinned);
+        for (List<Node> nodes : expired.values()) {
+            for (Node v : nodes) {
+                if (trim(versions.get(v), oldestPinned) == null) {
+                    versions.remove(v);
+                }
+            }
+        }
+        expired.clear();
+    }
+
+    // Saves state of node before its change, if some snapshot was taken after previous saved state
+    private void save(final Node v) {
+        if (pinnedTimestamps.isEmpty()) {
+            return;
+        }
+        Version newest = versions.get(v);
+        if (newest != null && newest.timestamp >= pinnedTimestamps.lastKey()) {
+            return;
+        }
+        versions.put(v, new Version(lastChangeTimestamp, v, trim(newest, pinnedTimestamps.firstKey())));
+        savedAt.computeIfAbsent(lastChangeTimestamp, t -> new ArrayList<>()).add(v);
+    }
+
+    // Cuts states older than every snapshot off the chain, returns its remaining newest state
+    private static Version trim(final Version newest, final long oldestPinned) {
+        if (newest == null || newest.timestamp < oldestPinned) {
+            return null;
+        }
+        Version last = newest;
+        while (last.older != null && last.older.timestamp >= oldestPinned) {
+            last = last.older;
+        }
+        last.older = null;
+        return newest;
+    }
+
+    // State of node at given timestamp is the oldest state saved not earlier than it
+    private Version getVersion(final Node v, final long timestamp) {
+        if (timestamp == CURRENT || versions.isEmpty()) {
+            return null;
+        }
+        Version res = null;
+        for (Version cur = versions.get(v); cur != null && cur.timestamp >= timestamp; cur = cur.older) {
+            res = cur;
+        }
+        return res;
+    }
+
+    private Node getRight(final Node v, final long timestamp) {
+        Version version = getVersion(v, timestamp);
+        return version == null ? v.getRight() : version.right;
+    }
+
+    private boolean isPlateau(final Node v, final long timestamp) {
+        Version version = getVersion(v, timestamp);
+        return version == null ? v.isPlateau() : version.isPlateau;
+    }
+
+    private byte[] getHash(final Node v, final long timestamp) {
+        Version version = getVersion(v, timestamp);
+        return version == null ? v.getHash() : version.hash;
     }
 
     private void recalcHash(final Node v) {
+        save(v);
         if (v.getRight() == null) {
             v.setHash(NIL);
             return;
         }
         if (v.getDown() == null) {
             if (v.getRight().isPlateau()) {
-                v.setHash(CommutativeHashing.SHA256(intToBytes(v.getData()), v.getRight().getHash()));
+                v.setHash(hash(intToBytes(v.getData()), v.getRight().getHash()));
             } else {
                 byte[] newBytes = (v.getRight().getRight() == null) ? NIL : intToBytes(v.getRight().getData());
-                v.setHash(CommutativeHashing.SHA256(intToBytes(v.getData()), newBytes));
+                v.setHash(hash(intToBytes(v.getData()), newBytes));
             }
         } else {
             if (!v.getRight().isPlateau()) {
                 v.setHash(v.getDown().getHash());
             } else {
-                v.setHash(CommutativeHashing.SHA256(v.getDown().getHash(), v.getRight().getHash()));
+                v.setHash(hash(v.getDown().getHash(), v.getRight().getHash()));
             }
         }
     }
@@ -278,36 +811,335 @@ public class IntAuthDict implements AuthDict<Integer> {
      */
     public Confirmation getConfirmation() {
         //return new Confirmation(createHashes(layers.get(layers.size() - 1)));
-        return new Confirmation(lastChangeTimestamp, root.getHash());
+        return new Confirmation(lastChangeTimestamp, root.getHash(), hashFunction.getName());
     }
 
-    private byte[] createHashes(Node v) {
-        Node nxt = v.getRight();
-        Node dwn = v.getDown();
-        if (v.getRight() == null) {
-            return NIL;
+    /**
+     * Counts nodes and hash arrays of {@link IntAuthDict}. Walks the whole structure.
+     *
+     * @return {@link MemoryFootprint} of current state
+     */
+    public MemoryFootprint footprint() {
+        long[] nodesPerLayer = new long[height + 1];
+        long hashArrays = 0;
+        long hashBytes = 0;
+        int level = height;
+        for (Node head = root; head != null; head = head.getDown(), level--) {
+            for (Node cur = head; cur != null; cur = cur.getRight()) {
+                nodesPerLayer[level]++;
+                byte[] hash = cur.getHash();
+                if (hash != NIL && (cur.getDown() == null || cur.getDown().getHash() != hash)) {
+                    hashArrays++;
+                    hashBytes += MemoryFootprint.align(MemoryFootprint.ARRAY_HEADER + hash.length);
+                }
+            }
         }
-        if (dwn == null) {
-            if (nxt.isPlateau()) {
-                v.setHash(CommutativeHashing.SHA256(intToBytes(v.getData()), createHashes(nxt)));
-            } else {
-                byte[] newBytes = (nxt.getRight() == null) ? NIL : intToBytes(nxt.getData());
-                v.setHash(CommutativeHashing.SHA256(intToBytes(v.getData()), newBytes));
+        long savedVersions = 0;
+        for (Version version : versions.values()) {
+            for (Version cur = version; cur != null; cur = cur.older) {
+                savedVersions++;
             }
-            return v.getHash();
         }
-        if (nxt.isPlateau()) {
-            v.setHash(CommutativeHashing.SHA256(createHashes(dwn), createHashes(nxt)));
-        } else {
-            v.setHash(createHashes(dwn));
+        return new MemoryFootprint(size, nodesPerLayer, 2L * (height + 1), hashArrays, hashBytes, savedVersions);
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Collects digests of nodes of given layer with keys in [from, to). Head of the layer has key
+     * {@link NodeDigest#HEAD}. Layers above root consist of root only.
+     */
+    List<NodeDigest> getDigests(final int level, final long from, final long to) {
+        List<NodeDigest> res = new ArrayList<>();
+        if (level > height) {
+            if (from == NodeDigest.HEAD) {
+                res.add(new NodeDigest(NodeDigest.HEAD, root.getHash()));
+            }
+            return res;
         }
-        return v.getHash();
+        Node cur = root;
+        boolean isHead = true;
+        for (int curLevel = height; ; curLevel--) {
+            while (cur.getRight().getData() < from) {
+                cur = cur.getRight();
+                isHead = false;
+            }
+            if (curLevel == level) {
+                break;
+            }
+            cur = cur.getDown();
+        }
+        if (isHead && from == NodeDigest.HEAD) {
+            res.add(new NodeDigest(NodeDigest.HEAD, cur.getHash()));
+        }
+        for (Node nxt = cur.getRight(); nxt.getRight() != null && nxt.getData() < to; nxt = nxt.getRight()) {
+            res.add(new NodeDigest(nxt.getData(), nxt.getHash()));
+        }
+        return res;
+    }
+
+    private byte[] hash(final byte[] s1, final byte[] s2) {
+        return CommutativeHashing.hash(hashFunction, s1, s2);
     }
 
     private byte[] intToBytes(final int x) {
         return ByteBuffer.allocate(4).putInt(x).array();
     }
 
+    /**
+     * Computes hash of node together with its subtree of hash tree: down node and right node, if the right one
+     * is plateau. Subtrees of different plateau nodes are independent, so plateau subtrees of layers
+     * not lower than {@code forkLevel} are computed by forked tasks. If set of dirty nodes is given,
+     * hashes of other nodes are kept.
+     */
+    private final class HashTask extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+        private final Node v;
+        private final int level;
+        private final Set<Node> dirty;
+        private final int forkLevel;
+
+        private HashTask(final Node v, final int level, final Set<Node> dirty, final int forkLevel) {
+            this.v = v;
+            this.level = level;
+            this.dirty = dirty;
+            this.forkLevel = forkLevel;
+        }
+
+        @Override
+        protected byte[] compute() {
+            Node nxt = v.getRight();
+            if (nxt == null) {
+                return NIL;
+            }
+            if (dirty != null && !dirty.contains(v)) {
+                return v.getHash();
+            }
+            HashTask right = nxt.isPlateau() ? new HashTask(nxt, level, dirty, forkLevel) : null;
+            boolean forked = right != null && level >= forkLevel;
+            if (forked) {
+                right.fork();
+            }
+            Node dwn = v.getDown();
+            byte[] downHash = dwn == null ? intToBytes(v.getData())
+                    : new HashTask(dwn, level - 1, dirty, forkLevel).compute();
+            if (right != null) {
+                v.setHash(hash(downHash, forked ? right.join() : right.compute()));
+            } else if (dwn == null) {
+                v.setHash(hash(downHash, nxt.getRight() == null ? NIL : intToBytes(nxt.getData())));
+            } else {
+                v.setHash(downHash);
+            }
+            return v.getHash();
+        }
+    }
+
+    /**
+     * Spliterator over keys in [lo, hi) reachable from {@code start} node of some layer.
+     * Until traversal begins, splitting is done by the nodes of start's layer, descending when
+     * the layer has no nodes inside the range.
+     */
+    private final class KeySpliterator implements Spliterator.OfInt {
+        private final long expectedTimestamp;
+        private Node start;
+        private boolean startIsHead;
+        private Node next = null;  // Next bottom node to report, null until traversal started
+        private int lo;
+        private final int hi;  // Exclusive, Integer.MAX_VALUE stands for no bound
+        private long estimate;
+
+        KeySpliterator(final Node start, final boolean startIsHead, final int lo, final int hi, final long estimate,
+                       final long expectedTimestamp) {
+            this.expectedTimestamp = expectedTimestamp;
+            this.start = start;
+            this.startIsHead = startIsHead;
+            this.lo = lo;
+            this.hi = hi;
+            this.estimate = estimate;
+        }
+
+        private void checkTimestamp() {
+            if (lastChangeTimestamp != expectedTimestamp) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        private void startTraversal() {
+            Node cur = start;
+            while (true) {
+                while (cur.getRight().getData() < lo) {
+                    cur = cur.getRight();
+                }
+                if (cur.getDown() == null) {
+                    break;
+                }
+                cur = cur.getDown();
+            }
+            next = (startIsHead || cur.getData() < lo) ? cur.getRight() : cur;
+            start = null;
+        }
+
+        private boolean hasNext() {
+            return next.getRight() != null && next.getData() < hi;
+        }
+
+        @Override
+        public boolean tryAdvance(final IntConsumer action) {
+            checkTimestamp();
+            if (next == null) {
+                startTraversal();
+            }
+            if (!hasNext()) {
+                return false;
+            }
+            action.accept(next.getData());
+            next = next.getRight();
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(final IntConsumer action) {
+            checkTimestamp();
+            if (next == null) {
+                startTraversal();
+            }
+            while (hasNext()) {
+                action.accept(next.getData());
+                next = next.getRight();
+            }
+            checkTimestamp();
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            if (start == null) {
+                return null;
+            }
+            while (true) {
+                int count = 0;
+                for (Node cur = start.getRight(); cur.getRight() != null && cur.getData() < hi; cur = cur.getRight()) {
+                    if (cur.getData() > lo) {
+                        count++;
+                    }
+                }
+                if (count > 0) {
+                    Node mid = start.getRight();
+                    while (mid.getData() <= lo) {
+                        mid = mid.getRight();
+                    }
+                    for (int i = 0; i < count / 2; i++) {
+                        mid = mid.getRight();
+                    }
+                    estimate >>>= 1;
+                    KeySpliterator prefix = new KeySpliterator(start, startIsHead, lo, mid.getData(), estimate,
+                            expectedTimestamp);
+                    start = mid;
+                    startIsHead = false;
+                    lo = mid.getData();
+                    return prefix;
+                }
+                if (start.getDown() == null) {
+                    return null;
+                }
+                start = start.getDown();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL;
+        }
+
+        @Override
+        public Comparator<? super Integer> getComparator() {
+            return null;
+        }
+    }
+
+    /**
+     * Read-only view of {@link IntAuthDict} pinned to one timestamp. Queries to snapshot are consistent
+     * with each other regardless of later changes of dictionary.
+     */
+    public final class Snapshot implements AutoCloseable {
+        private final Node root;
+        private final long timestamp;
+        private boolean closed = false;
+
+        private Snapshot(final Node root, final long timestamp) {
+            this.root = root;
+            this.timestamp = timestamp;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public boolean find(final int key) {
+            checkOpen();
+            return IntAuthDict.this.find(root, readTimestamp(), key);
+        }
+
+        public Proof makeProof(final int key) {
+            checkOpen();
+            return IntAuthDict.this.makeProof(root, timestamp, readTimestamp(), key);
+        }
+
+        public CompactProof makeCompactProof(final int key) {
+            checkOpen();
+            return IntAuthDict.this.makeCompactProof(root, timestamp, readTimestamp(), key);
+        }
+
+        public Confirmation getConfirmation() {
+            checkOpen();
+            return new Confirmation(timestamp, getHash(root, readTimestamp()), hashFunction.getName());
+        }
+
+        /**
+         * Releases snapshot. Repeated calls have no effect.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(timestamp);
+            }
+        }
+
+        // Snapshot of current state reads nodes directly
+        private long readTimestamp() {
+            return timestamp == lastChangeTimestamp ? CURRENT : timestamp;
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Snapshot is closed");
+            }
+        }
+    }
+
+    private static final class Version {
+        private final long timestamp;
+        private final Node right;
+        private final boolean isPlateau;
+        private final byte[] hash;
+        private Version older;
+
+        Version(final long timestamp, final Node node, final Version older) {
+            this.timestamp = timestamp;
+            this.right = node.getRight();
+            this.isPlateau = node.isPlateau();
+            this.hash = node.getHash();
+            this.older = older;
+        }
+    }
+
     private static class Node {
         private final int data;
         private Node right = null;
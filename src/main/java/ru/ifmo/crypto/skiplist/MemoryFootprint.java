@@ -0,0 +1,106 @@
+package ru.ifmo.crypto.skiplist;
+
+import java.util.Arrays;
+
+/**
+ * Report of memory used by {@link IntAuthDict}. Byte estimates assume 64-bit JVM with compressed
+ * references: 12-byte object headers, 16-byte array headers, 4-byte references and 8-byte alignment.
+ */
+public class MemoryFootprint {
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    static final int ALIGNMENT = 8;
+    // int data, right, down, boolean isPlateau, hash
+    static final long NODE_BYTES = align(OBJECT_HEADER + Integer.BYTES + 3 * REFERENCE + 1);
+    // long timestamp, right, boolean isPlateau, hash, older; plus two references in identity map
+    static final long VERSION_BYTES = align(OBJECT_HEADER + Long.BYTES + 3 * REFERENCE + 1) + 2 * REFERENCE;
+
+    private final int keys;
+    private final long[] nodesPerLayer;
+    private final long sentinels;
+    private final long hashArrays;
+    private final long hashBytes;
+    private final long versions;
+
+    MemoryFootprint(int keys, long[] nodesPerLayer, long sentinels, long hashArrays, long hashBytes, long versions) {
+        this.keys = keys;
+        this.nodesPerLayer = nodesPerLayer;
+        this.sentinels = sentinels;
+        this.hashArrays = hashArrays;
+        this.hashBytes = hashBytes;
+        this.versions = versions;
+    }
+
+    static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    public int getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return number of nodes of every layer including sentinels, bottom layer first
+     */
+    public long[] getNodesPerLayer() {
+        return nodesPerLayer.clone();
+    }
+
+    public long getNodes() {
+        return Arrays.stream(nodesPerLayer).sum();
+    }
+
+    public long getSentinels() {
+        return sentinels;
+    }
+
+    /**
+     * @return number of distinct hash arrays. Nodes without plateau neighbour share hash array with lower node.
+     */
+    public long getHashArrays() {
+        return hashArrays;
+    }
+
+    /**
+     * @return retained size of hash arrays, including array headers
+     */
+    public long getHashBytes() {
+        return hashBytes;
+    }
+
+    /**
+     * @return number of node states saved for open snapshots
+     */
+    public long getVersions() {
+        return versions;
+    }
+
+    /**
+     * @return estimated retained size of dictionary
+     */
+    public long getEstimatedBytes() {
+        return getNodes() * NODE_BYTES + hashBytes + versions * VERSION_BYTES;
+    }
+
+    public double getBytesPerKey() {
+        return keys == 0 ? 0 : (double) getEstimatedBytes() / keys;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Keys: ").append(keys).append(System.lineSeparator());
+        for (int i = 0; i < nodesPerLayer.length; i++) {
+            sb.append("Layer ").append(i).append(": ").append(nodesPerLayer[i]).append(" nodes")
+                    .append(System.lineSeparator());
+        }
+        sb.append("Nodes: ").append(getNodes()).append(" (").append(sentinels).append(" sentinels), ")
+                .append(getNodes() * NODE_BYTES).append(" bytes").append(System.lineSeparator());
+        sb.append("Hash arrays: ").append(hashArrays).append(", ").append(hashBytes).append(" bytes")
+                .append(System.lineSeparator());
+        sb.append("Snapshot versions: ").append(versions).append(System.lineSeparator());
+        sb.append(String.format("Estimated: %d bytes, %.1f bytes per key", getEstimatedBytes(), getBytesPerKey()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package ru.ifmo.crypto.skiplist;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * {@link HashFunction} backed by {@link MessageDigest} of JCA provider
+ */
+public final class MessageDigestHashFunction implements HashFunction {
+    private final String name;
+    private final ThreadLocal<MessageDigest> digest;
+
+    /**
+     * @param name standard name of {@link MessageDigest} algorithm
+     * @throws IllegalArgumentException if algorithm is not supported by any provider
+     */
+    public MessageDigestHashFunction(final String name) {
+        this.name = name;
+        newDigest(name);  // Unknown name is reported here, not by the first digest of some thread
+        this.digest = ThreadLocal.withInitial(() -> newDigest(name));
+    }
+
+    private static MessageDigest newDigest(final String name) {
+        try {
+            return MessageDigest.getInstance(name);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Hashing algorithm not found: " + name, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public byte[] digest(final byte[] input) {
+        return digest.get().digest(input);
+    }
+
+    @Override
+    public byte[] digest(final byte[] first, final byte[] second) {
+        MessageDigest md = digest.get();
+        md.update(first);
+        return md.digest(second);
+    }
+}
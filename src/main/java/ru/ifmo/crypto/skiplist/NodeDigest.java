@@ -0,0 +1,27 @@
+package ru.ifmo.crypto.skiplist;
+
+/**
+ * Key and hash of a skip list node, exchanged during replica synchronization
+ */
+public class NodeDigest {
+    /**
+     * Key of layer head. Heads precede all keys of a layer.
+     */
+    public static final long HEAD = Long.MIN_VALUE;
+
+    private final long key;
+    private final byte[] hash;
+
+    public NodeDigest(long key, byte[] hash) {
+        this.key = key;
+        this.hash = hash;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+}
@@ -12,12 +12,14 @@ public class Proof {
     private final boolean isPresent;
     private final int element;
     private final List<byte[]> sequence;
+    private final String hashAlgorithm;
 
-    Proof(int element, long timestamp, List<byte[]> sequence, boolean isPresent) {
+    Proof(int element, long timestamp, List<byte[]> sequence, boolean isPresent, String hashAlgorithm) {
         this.timestamp = timestamp;
         this.sequence = sequence;
         this.isPresent = isPresent;
         this.element = element;
+        this.hashAlgorithm = hashAlgorithm;
     }
 
     public int getElement() {
@@ -35,4 +37,8 @@ public class Proof {
     public List<byte[]> getSequence() {
         return sequence;
     }
+
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
 }
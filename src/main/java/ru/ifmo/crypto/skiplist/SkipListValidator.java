@@ -1,14 +1,37 @@
 package ru.ifmo.crypto.skiplist;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
 /**
- * Class for {@link Proof} validating
+ * Class for {@link Proof} and {@link CompactProof} validating
  *
  * @author Daniil Boger (Sagolbah)
  */
-public class SkipListValidator implements Validator {
+public class SkipListValidator implements CompactProofValidator {
+    private static final byte[] NIL = new byte[]{};
+
+    private final HashFunction hashFunction;
+    private final int digestLength;
+
+    /**
+     * Creates validator for skip lists authenticated with SHA-256
+     */
+    public SkipListValidator() {
+        this(HashFunction.SHA256);
+    }
+
+    /**
+     * Creates validator for skip lists authenticated with given hash function
+     *
+     * @param hashFunction hash function of skip list
+     */
+    public SkipListValidator(HashFunction hashFunction) {
+        this.hashFunction = hashFunction;
+        this.digestLength = hashFunction.digest(NIL).length;
+    }
+
     /**
      * Validates given {@link Proof}
      *
@@ -22,12 +45,125 @@ public class SkipListValidator implements Validator {
         if (proof.getTimestamp() < conf.getTimestamp()) {
             return ValidationResult.OUTDATED;
         }
+        if (!hashFunction.getName().equals(proof.getHashAlgorithm())
+                || !hashFunction.getName().equals(conf.getHashAlgorithm())) {
+            return ValidationResult.WRONG;
+        }
+        if (proof.getElement() == Integer.MIN_VALUE) {  // Key of head sentinel is never stored
+            return ValidationResult.WRONG;
+        }
         List<byte[]> seq = proof.getSequence();
-        byte[] cur = CommutativeHashing.SHA256(seq.get(0), seq.get(1));
+        byte[] cur = CommutativeHashing.hash(hashFunction, seq.get(0), seq.get(1));
         for (int i = 2; i < seq.size(); i++) {
-            cur = CommutativeHashing.SHA256(cur, seq.get(i));
+            cur = CommutativeHashing.hash(hashFunction, cur, seq.get(i));
         }
         // cur = CommutativeHashing.SHA256(cur, new byte[]{});
         return Arrays.equals(cur, conf.getHash()) ? ValidationResult.CORRECT : ValidationResult.WRONG;
     }
+
+    /**
+     * Validates given {@link CompactProof}. Unlike {@link Proof}, membership or non-membership
+     * of proof element is checked too.
+     *
+     * @param proof given proof
+     * @param conf  {@link Confirmation} of skip list
+     * @return {@link ValidationResult} instance. CORRECT if proof is correct, OUTDATED if proof is outdated,
+     * WRONG otherwise
+     */
+    @Override
+    public ValidationResult validate(CompactProof proof, Confirmation conf) {
+        if (proof.getTimestamp() < conf.getTimestamp()) {
+            return ValidationResult.OUTDATED;
+        }
+        if (!hashFunction.getName().equals(proof.getHashAlgorithm())
+                || !hashFunction.getName().equals(conf.getHashAlgorithm())) {
+            return ValidationResult.WRONG;
+        }
+        if (proof.getElement() == Integer.MIN_VALUE) {  // Key of head sentinel is never stored
+            return ValidationResult.WRONG;
+        }
+        int[] keys = proof.getKeys();
+        byte[][] hashes = proof.getHashes();
+        int keyIndex = 0;
+        int hashIndex = 0;
+        int i = 0;
+        // Successor of element, Long.MAX_VALUE for right infinity
+        long successor;
+        byte[] successorHash;
+        if (proof.getLength() < 1) {
+            return ValidationResult.WRONG;
+        }
+        if (proof.getKind(i) == CompactProof.NIL) {
+            if (proof.isExpandedSuccessor()) {
+                return ValidationResult.WRONG;
+            }
+            successor = Long.MAX_VALUE;
+            successorHash = NIL;
+            i++;
+        } else if (proof.getKind(i) == CompactProof.KEY) {
+            successor = keys[keyIndex++];
+            successorHash = intToBytes((int) successor);
+            i++;
+            if (proof.isExpandedSuccessor()) {
+                if (i >= proof.getLength()) {
+                    return ValidationResult.WRONG;
+                }
+                // Commutative hash does not fix order of the pair, so it is fixed here:
+                // key of right part follows successor, hash is never mistaken for a key
+                byte[] rightPart;
+                switch (proof.getKind(i++)) {
+                    case CompactProof.KEY:
+                        if (keys[keyIndex] <= successor) {
+                            return ValidationResult.WRONG;
+                        }
+                        rightPart = intToBytes(keys[keyIndex++]);
+                        break;
+                    case CompactProof.HASH:
+                        rightPart = hashes[hashIndex++];
+                        if (rightPart.length != digestLength) {
+                            return ValidationResult.WRONG;
+                        }
+                        break;
+                    default:
+                        rightPart = NIL;
+                }
+                successorHash = CommutativeHashing.hash(hashFunction, successorHash, rightPart);
+            }
+        } else {
+            return ValidationResult.WRONG;
+        }
+        int predecessor;
+        if (proof.isPresent()) {
+            predecessor = proof.getElement();
+        } else {
+            if (i >= proof.getLength() || proof.getKind(i++) != CompactProof.KEY) {
+                return ValidationResult.WRONG;
+            }
+            predecessor = keys[keyIndex++];
+            if (predecessor >= proof.getElement()) {
+                return ValidationResult.WRONG;
+            }
+        }
+        if (proof.getElement() >= successor) {
+            return ValidationResult.WRONG;
+        }
+        byte[] cur = CommutativeHashing.hash(hashFunction, successorHash, intToBytes(predecessor));
+        for (; i < proof.getLength(); i++) {
+            switch (proof.getKind(i)) {
+                case CompactProof.KEY:
+                    cur = CommutativeHashing.hash(hashFunction, cur, intToBytes(keys[keyIndex++]));
+                    break;
+                case CompactProof.HASH:
+                    cur = CommutativeHashing.hash(hashFunction, cur, hashes[hashIndex++]);
+                    break;
+                default:
+                    cur = CommutativeHashing.hash(hashFunction, cur, NIL);
+            }
+        }
+        return Arrays.equals(cur, conf.getHash()) ? ValidationResult.CORRECT : ValidationResult.WRONG;
+    }
+
+    private static byte[] intToBytes(final int x) {
+        return ByteBuffer.allocate(4).putInt(x).array();
+    }
 }
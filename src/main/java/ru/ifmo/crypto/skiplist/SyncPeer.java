@@ -0,0 +1,25 @@
+package ru.ifmo.crypto.skiplist;
+
+import java.util.List;
+
+/**
+ * Remote side of replica synchronization. Implementations are transports to the source replica.
+ *
+ * @see DictSynchronizer
+ */
+public interface SyncPeer {
+    Confirmation getConfirmation();
+
+    /**
+     * @return level of root layer, bottom layer has level 0
+     */
+    int getHeight();
+
+    /**
+     * @param level level of layer
+     * @param from  inclusive lower bound of keys, {@link NodeDigest#HEAD} includes head of the layer
+     * @param to    exclusive upper bound of keys
+     * @return digests of layer nodes with keys in [from, to), in ascending order
+     */
+    List<NodeDigest> getDigests(int level, long from, long to);
+}
@@ -0,0 +1,34 @@
+package ru.ifmo.crypto.skiplist;
+
+/**
+ * Statistics of replica synchronization
+ */
+public class SyncResult {
+    private final int inserted;
+    private final int deleted;
+    private final int requests;
+    private final long transferredDigests;
+
+    SyncResult(int inserted, int deleted, int requests, long transferredDigests) {
+        this.inserted = inserted;
+        this.deleted = deleted;
+        this.requests = requests;
+        this.transferredDigests = transferredDigests;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public long getTransferredDigests() {
+        return transferredDigests;
+    }
+}
@@ -0,0 +1,596 @@
+package ru.ifmo.crypto.skiplist;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Implementation for {@link AuthDict} interface of {@link Integer} elements with unrolled layout.
+ * Every layer is a chain of blocks, which keep several consecutive keys with their hashes in arrays,
+ * so searches touch one block per several keys instead of one node per key. Hashes of a block are stored
+ * back to back in single byte array rather than as separate arrays per entry.
+ * Hashes are defined exactly as in {@link IntAuthDict}: proofs are validated by {@link SkipListValidator},
+ * and canonical dictionaries of both layouts with equal seeds and keys have equal {@link Confirmation} hashes.
+ * As in {@link IntAuthDict}, {@link Integer#MIN_VALUE} is reserved for head sentinels.
+ */
+public class UnrolledIntAuthDict implements AuthDict<Integer> {
+    static final int BLOCK_CAPACITY = 32;
+    private static final int BUILD_FILL = BLOCK_CAPACITY * 3 / 4;
+    private static final int MERGE_THRESHOLD = BLOCK_CAPACITY / 4;
+    private static final byte[] NIL = new byte[]{};
+
+    private final Random rng = new Random();
+    private final boolean canonical;
+    private final long seed;
+    private final HashFunction hashFunction;
+    private final int digestLength;
+    private final List<Block> heads = new ArrayList<>();  // First block of every layer, bottom layer first
+    private long lastChangeTimestamp = 0;
+    private int size = 0;
+
+    /**
+     * Creates empty {@link UnrolledIntAuthDict}
+     */
+    public UnrolledIntAuthDict() {
+        this(Collections.emptyList());
+    }
+
+    /**
+     * Creates empty canonical {@link UnrolledIntAuthDict}
+     *
+     * @param seed seed of tower heights
+     * @see IntAuthDict#IntAuthDict(long)
+     */
+    public UnrolledIntAuthDict(final long seed) {
+        this(Collections.emptyList(), seed);
+    }
+
+    /**
+     * Creates {@link UnrolledIntAuthDict} with given values
+     *
+     * @param source list of initial values
+     */
+    public UnrolledIntAuthDict(final List<Integer> source) {
+        this(source, HashFunction.SHA256);
+    }
+
+    /**
+     * Creates {@link UnrolledIntAuthDict} with given values authenticated with given hash function
+     *
+     * @param source       list of initial values
+     * @param hashFunction hash function for authentication
+     */
+    public UnrolledIntAuthDict(final List<Integer> source, final HashFunction hashFunction) {
+        this(source, false, 0, hashFunction);
+    }
+
+    /**
+     * Creates canonical {@link UnrolledIntAuthDict} with given values
+     *
+     * @param source list of initial values
+     * @param seed   seed of tower heights
+     * @see IntAuthDict#IntAuthDict(long)
+     */
+    public UnrolledIntAuthDict(final List<Integer> source, final long seed) {
+        this(source, seed, HashFunction.SHA256);
+    }
+
+    /**
+     * Creates canonical {@link UnrolledIntAuthDict} with given values authenticated with given hash function
+     *
+     * @param source       list of initial values
+     * @param seed         seed of tower heights
+     * @param hashFunction hash function for authentication
+     * @see IntAuthDict#IntAuthDict(long)
+     */
+    public UnrolledIntAuthDict(final List<Integer> source, final long seed, final HashFunction hashFunction) {
+        this(source, true, seed, hashFunction);
+    }
+
+    private UnrolledIntAuthDict(final List<Integer> source, final boolean canonical, final long seed,
+                                final HashFunction hashFunction) {
+        this.canonical = canonical;
+        this.seed = seed;
+        this.hashFunction = hashFunction;
+        this.digestLength = hashFunction.digest(NIL).length;
+        build(source);
+    }
+
+    private void build(final List<Integer> source) {
+        int[] keys = source.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        if (keys.length > 0) {
+            IntAuthDict.checkKey(keys[0]);
+        }
+        size = keys.length;
+        int[] heights = new int[keys.length];
+        int maxHeight = -1;
+        for (int i = 0; i < keys.length; i++) {
+            heights[i] = towerHeight(keys[i], Integer.MAX_VALUE);
+            maxHeight = Math.max(maxHeight, heights[i]);
+        }
+        // Indices of keys present in the previous layer and blocks containing them
+        int[] lower = new int[0];
+        Block[] lowerBlocks = new Block[0];
+        // Canonical layout keeps an empty layer above bottom even without keys, as IntAuthDict does
+        int topLevel = canonical ? Math.max(maxHeight + 1, 1) : maxHeight + 1;
+        for (int level = 0; level <= topLevel; level++) {
+            int[] layer = level == 0 ? IntStream.range(0, keys.length).toArray() : filter(lower, heights, level);
+            Block[] layerBlocks = new Block[layer.length];
+            Block head = new Block(level > 0, digestLength);
+            head.keys[0] = Integer.MIN_VALUE;
+            head.count = 1;
+            if (level > 0) {
+                head.downs[0] = heads.get(level - 1);
+            }
+            heads.add(head);
+            Block last = head;
+            int j = 0;
+            for (int k = 0; k < layer.length; k++) {
+                if (last.count == BUILD_FILL) {
+                    last.next = new Block(level > 0, digestLength);
+                    last = last.next;
+                }
+                int i = layer[k];
+                last.keys[last.count] = keys[i];
+                last.plateau[last.count] = heights[i] == level;
+                if (level > 0) {
+                    while (lower[j] != i) {
+                        j++;
+                    }
+                    last.downs[last.count] = lowerBlocks[j];
+                }
+                last.count++;
+                layerBlocks[k] = last;
+            }
+            lower = layer;
+            lowerBlocks = layerBlocks;
+        }
+        for (int level = 0; level < heads.size(); level++) {
+            List<Block> blocks = new ArrayList<>();
+            for (Block b = heads.get(level); b != null; b = b.next) {
+                blocks.add(b);
+            }
+            for (int k = blocks.size() - 1; k >= 0; k--) {
+                Block b = blocks.get(k);
+                for (int i = b.count - 1; i >= 0; i--) {
+                    recalcHash(new Pos(b, i, level));
+                }
+            }
+        }
+    }
+
+    private static int[] filter(final int[] lower, final int[] heights, final int level) {
+        return Arrays.stream(lower).filter(i -> heights[i] >= level).toArray();
+    }
+
+    private int height() {
+        return heads.size() - 1;
+    }
+
+    private int towerHeight(final int key, final int limit) {
+        if (canonical) {
+            return Long.numberOfTrailingZeros(~IntAuthDict.coins(seed, key));
+        }
+        int res = 0;
+        while (res < limit && rng.nextBoolean()) {
+            res++;
+        }
+        return res;
+    }
+
+    private void addLayer() {
+        Block head = new Block(true, digestLength);
+        head.keys[0] = Integer.MIN_VALUE;
+        head.count = 1;
+        head.downs[0] = heads.get(height());
+        heads.add(head);
+    }
+
+    // Public - for testing purposes only.
+    public boolean find(final Integer key) {
+        Block b = heads.get(height());
+        int i = 0;
+        for (int level = height(); ; level--) {
+            while (true) {
+                if (i + 1 < b.count) {
+                    if (b.keys[i + 1] < key) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                } else if (b.next != null && b.next.keys[0] < key) {
+                    b = b.next;
+                    i = 0;
+                } else {
+                    break;
+                }
+            }
+            if (level == 0) {
+                if (i + 1 < b.count) {
+                    return b.keys[i + 1] == key;
+                }
+                return b.next != null && b.next.keys[0] == key;
+            }
+            boolean isHead = i == 0 && b == heads.get(level);
+            Block down = b.downs[i];
+            i = indexOf(down, b.keys[i], isHead, level - 1);
+            b = down;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Inserts key in {@link UnrolledIntAuthDict} and rehashes skip list
+     *
+     * @param elem element for inserting
+     * @throws IllegalArgumentException if elem is {@link Integer#MIN_VALUE}
+     */
+    @Override
+    public void insert(final Integer elem) {
+        IntAuthDict.checkKey(elem);
+        if (find(elem)) {
+            return;
+        }
+        int towerHeight = towerHeight(elem, height());
+        while (height() <= towerHeight) {  // Root layer stays empty
+            addLayer();
+        }
+        Pos[] preds = predecessors(search(elem, false));
+        Block down = null;
+        for (int level = 0; level <= towerHeight; level++) {
+            down = insertAfter(preds[level], elem, level == towerHeight, down);
+        }
+        rehash(elem, true);
+        size++;
+        lastChangeTimestamp++;
+    }
+
+    /**
+     * Removes key in {@link UnrolledIntAuthDict}. If key is not in the skip list, nothing happens.
+     *
+     * @param elem element for deleting
+     */
+    @Override
+    public void delete(final Integer elem) {
+        if (!find(elem)) {
+            return;
+        }
+        Pos[] preds = predecessors(search(elem, false));
+        // Tower is unlinked top-down, so the layers searched by relink never keep entries without lower copies
+        for (int level = height(); level >= 0; level--) {
+            Pos next = right(preds[level]);
+            if (next != null && next.key() == elem) {
+                remove(next, next.block == preds[level].block ? null : preds[level].block);
+            }
+        }
+        rehash(elem, false);
+        size--;
+        lastChangeTimestamp++;
+    }
+
+    /**
+     * Creates {@link Proof} for given key.
+     *
+     * @param key key for proof generation
+     * @return {@link Proof} for given key
+     * @throws IllegalArgumentException if key is {@link Integer#MIN_VALUE}
+     */
+    @Override
+    public Proof makeProof(final Integer key) {
+        IntAuthDict.checkKey(key);
+        List<Pos> pList = search(key, true);
+        Collections.reverse(pList);
+        List<byte[]> qList = new ArrayList<>();
+        Pos cur = pList.get(0);
+        Pos cur_w = right(cur);
+        boolean isPresent = cur.key() == key;
+        if (isPlateau(cur_w, 0)) {
+            qList.add(getHash(cur_w));
+        } else if (cur_w == null) {
+            qList.add(NIL);
+        } else {
+            qList.add(intToBytes(cur_w.key()));
+        }
+        qList.add(intToBytes(cur.key()));
+        for (int i = 1; i < pList.size(); i++) {
+            Pos cur_v = pList.get(i);
+            cur_w = right(cur_v);
+            if (isPlateau(cur_w, cur_v.level)) {
+                if (!pList.get(i - 1).equals(cur_w)) {
+                    qList.add(getHash(cur_w));
+                } else if (cur_v.level == 0) {
+                    qList.add(intToBytes(cur_v.key()));
+                } else {
+                    qList.add(getDownHash(cur_v));
+                }
+            }
+        }
+        return new Proof(key, lastChangeTimestamp, qList, isPresent, hashFunction.getName());
+    }
+
+    /**
+     * Creates most up-to-date confirmation of {@link UnrolledIntAuthDict}
+     *
+     * @return {@link Confirmation} of given list
+     */
+    @Override
+    public Confirmation getConfirmation() {
+        return new Confirmation(lastChangeTimestamp, heads.get(height()).getHash(0), hashFunction.getName());
+    }
+
+    // Entries of search path from root, last entry of every layer is less (or equal) than key
+    private List<Pos> search(final int key, final boolean inclusive) {
+        return search(key, inclusive, 0);
+    }
+
+    // Search path down to given layer
+    private List<Pos> search(final int key, final boolean inclusive, final int lowest) {
+        List<Pos> path = new ArrayList<>();
+        Block b = heads.get(height());
+        int i = 0;
+        for (int level = height(); ; level--) {
+            path.add(new Pos(b, i, level));
+            while (true) {
+                if (i + 1 < b.count) {
+                    if (before(b.keys[i + 1], key, inclusive)) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                } else if (b.next != null && before(b.next.keys[0], key, inclusive)) {
+                    b = b.next;
+                    i = 0;
+                } else {
+                    break;
+                }
+                path.add(new Pos(b, i, level));
+            }
+            if (level == lowest) {
+                return path;
+            }
+            boolean isHead = i == 0 && b == heads.get(level);
+            Block down = b.downs[i];
+            i = indexOf(down, b.keys[i], isHead, level - 1);
+            b = down;
+        }
+    }
+
+    private static boolean before(final int x, final int key, final boolean inclusive) {
+        return inclusive ? x <= key : x < key;
+    }
+
+    private Pos[] predecessors(final List<Pos> path) {
+        Pos[] res = new Pos[height() + 1];
+        for (Pos p : path) {
+            res[p.level] = p;
+        }
+        return res;
+    }
+
+    // Predecessor of key on given layer
+    private Pos locate(final int key, final int level) {
+        List<Pos> path = search(key, false, level);
+        return path.get(path.size() - 1);
+    }
+
+    private int indexOf(final Block b, final int key, final boolean isHead, final int level) {
+        if (isHead) {
+            return 0;
+        }
+        int from = b == heads.get(level) ? 1 : 0;
+        return Arrays.binarySearch(b.keys, from, b.count, key);
+    }
+
+    private Pos right(final Pos p) {
+        if (p.index + 1 < p.block.count) {
+            return new Pos(p.block, p.index + 1, p.level);
+        }
+        return p.block.next == null ? null : new Pos(p.block.next, 0, p.level);
+    }
+
+    // Right infinity is plateau only on the root layer
+    private boolean isPlateau(final Pos p, final int level) {
+        return p == null ? level == height() : p.block.plateau[p.index];
+    }
+
+    private static byte[] getHash(final Pos p) {
+        return p == null ? NIL : p.block.getHash(p.index);
+    }
+
+    private byte[] getDownHash(final Pos p) {
+        Block down = p.block.downs[p.index];
+        boolean isHead = p.index == 0 && p.block == heads.get(p.level);
+        return down.getHash(indexOf(down, p.key(), isHead, p.level - 1));
+    }
+
+    private void recalcHash(final Pos v) {
+        Pos w = right(v);
+        byte[] rightHash = getHash(w);
+        byte[] hash;
+        if (v.level == 0) {
+            if (isPlateau(w, 0)) {
+                hash = hash(intToBytes(v.key()), rightHash);
+            } else {
+                hash = hash(intToBytes(v.key()), w == null ? NIL : intToBytes(w.key()));
+            }
+        } else {
+            byte[] downHash = getDownHash(v);
+            hash = isPlateau(w, v.level) ? hash(downHash, rightHash) : downHash;
+        }
+        v.block.setHash(v.index, hash);
+    }
+
+    private void rehash(final int key, final boolean withRight) {
+        List<Pos> path = search(key, false);
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Pos rec = path.get(i);
+            Pos next = right(rec);
+            if (withRight && next != null) {
+                recalcHash(next);
+            }
+            recalcHash(rec);
+        }
+    }
+
+    // Inserts entry after given one and returns block containing it
+    private Block insertAfter(final Pos pred, final int key, final boolean plateau, final Block down) {
+        Block b = pred.block;
+        int pos = pred.index + 1;
+        Block moved = null;
+        if (b.count == BLOCK_CAPACITY) {
+            moved = split(b);
+            if (pos > b.count) {
+                pos -= b.count;
+                b = moved;
+            }
+        }
+        b.shift(pos, 1);
+        b.keys[pos] = key;
+        b.plateau[pos] = plateau;
+        b.setHash(pos, NIL);
+        if (b.downs != null) {
+            b.downs[pos] = down;
+        }
+        if (moved != null) {
+            relink(moved, pred.level);
+        }
+        return b;
+    }
+
+    private Block split(final Block b) {
+        Block res = new Block(b.downs != null, digestLength);
+        int half = b.count / 2;
+        res.append(b, half, b.count - half);
+        b.truncate(half);
+        res.next = b.next;
+        b.next = res;
+        return res;
+    }
+
+    private void remove(final Pos p, final Block prev) {
+        Block b = p.block;
+        b.shift(p.index + 1, -1);
+        if (b.count == 0) {
+            prev.next = b.next;
+        } else if (b.count < MERGE_THRESHOLD && b.next != null && b.count + b.next.count <= BUILD_FILL) {
+            Block next = b.next;
+            b.append(next, 0, next.count);
+            b.next = next.next;
+            relink(b, p.level);
+        }
+    }
+
+    // Points towers of entries moved to given block to it
+    private void relink(final Block b, final int level) {
+        if (level == height()) {
+            return;
+        }
+        int last = b.keys[b.count - 1];
+        Pos cur = right(locate(b.keys[0], level + 1));
+        while (cur != null && cur.key() <= last) {
+            cur.block.downs[cur.index] = b;
+            cur = right(cur);
+        }
+    }
+
+    private byte[] hash(final byte[] s1, final byte[] s2) {
+        return CommutativeHashing.hash(hashFunction, s1, s2);
+    }
+
+    private static byte[] intToBytes(final int x) {
+        return ByteBuffer.allocate(4).putInt(x).array();
+    }
+
+    private static final class Pos {
+        private final Block block;
+        private final int index;
+        private final int level;
+
+        Pos(final Block block, final int index, final int level) {
+            this.block = block;
+            this.index = index;
+            this.level = level;
+        }
+
+        int key() {
+            return block.keys[index];
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Pos)) {
+                return false;
+            }
+            Pos p = (Pos) o;
+            return block == p.block && index == p.index && level == p.level;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(block) * 31 + index;
+        }
+    }
+
+    private static final class Block {
+        private int count = 0;
+        private final int[] keys = new int[BLOCK_CAPACITY];
+        private final int digestLength;
+        private final byte[] hashes;  // Hash of i-th entry starts at i * digestLength
+        private final boolean[] nil = new boolean[BLOCK_CAPACITY];  // Hash of entry is not computed yet
+        private final boolean[] plateau = new boolean[BLOCK_CAPACITY];  // No entry with the same key above
+        private final Block[] downs;  // Blocks of lower layer containing the same keys, null on bottom layer
+        private Block next = null;
+
+        Block(final boolean hasDowns, final int digestLength) {
+            this.digestLength = digestLength;
+            hashes = new byte[BLOCK_CAPACITY * digestLength];
+            downs = hasDowns ? new Block[BLOCK_CAPACITY] : null;
+        }
+
+        byte[] getHash(final int i) {
+            return nil[i] ? NIL : Arrays.copyOfRange(hashes, i * digestLength, (i + 1) * digestLength);
+        }
+
+        void setHash(final int i, final byte[] hash) {
+            nil[i] = hash.length == 0;
+            System.arraycopy(hash, 0, hashes, i * digestLength, hash.length);
+        }
+
+        // Moves entries starting from given index by delta positions
+        void shift(final int from, final int delta) {
+            int length = count - from;
+            System.arraycopy(keys, from, keys, from + delta, length);
+            System.arraycopy(hashes, from * digestLength, hashes, (from + delta) * digestLength, length * digestLength);
+            System.arraycopy(nil, from, nil, from + delta, length);
+            System.arraycopy(plateau, from, plateau, from + delta, length);
+            if (downs != null) {
+                System.arraycopy(downs, from, downs, from + delta, length);
+            }
+            count += delta;
+            if (delta < 0 && downs != null) {
+                downs[count] = null;
+            }
+        }
+
+        void append(final Block src, final int from, final int length) {
+            System.arraycopy(src.keys, from, keys, count, length);
+            System.arraycopy(src.hashes, from * digestLength, hashes, count * digestLength, length * digestLength);
+            System.arraycopy(src.nil, from, nil, count, length);
+            System.arraycopy(src.plateau, from, plateau, count, length);
+            if (downs != null) {
+                System.arraycopy(src.downs, from, downs, count, length);
+            }
+            count += length;
+        }
+
+        void truncate(final int newCount) {
+            if (downs != null) {
+                Arrays.fill(downs, newCount, count, null);
+            }
+            count = newCount;
+        }
+    }
+}
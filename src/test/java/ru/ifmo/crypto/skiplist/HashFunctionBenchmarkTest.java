@@ -0,0 +1,51 @@
+package ru.ifmo.crypto.skiplist;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Latency benchmark of commutative hashing with every built-in {@link HashFunction}.
+ * Inputs are two digests (inner node) and digest with key (bottom node).
+ * Number of measured calls is set by "benchmark.iterations" property, e.g. -Dbenchmark.iterations=10000000.
+ */
+public class HashFunctionBenchmarkTest {
+    private final int iterations = Integer.getInteger("benchmark.iterations", 1000000);
+    private int sink;  // Keeps results of measured calls alive
+
+    @Test
+    public void test_hashFunctions() {
+        List<HashFunction> functions = List.of(HashFunction.SHA256, HashFunction.SHA512_256, HashFunction.BLAKE2B_256);
+        System.out.println("Commutative hashing, " + iterations + " calls");
+        for (HashFunction function : functions) {
+            byte[] digest = function.digest(new byte[]{1});
+            byte[] key = new byte[]{0, 0, 4, 2};
+            double inner = measure(function, digest, function.digest(new byte[]{2}));
+            double bottom = measure(function, digest, key);
+            assertTrue(inner > 0 && bottom > 0);
+            System.out.printf("%-12s 32+32 bytes: %6.1f ns/op, 32+4 bytes: %6.1f ns/op%n",
+                    function.getName(), inner, bottom);
+        }
+        System.out.println();
+    }
+
+    private double measure(final HashFunction function, final byte[] first, final byte[] second) {
+        Random rng = new Random(239);
+        byte[] a = first.clone();
+        byte[] b = second.clone();
+        for (int i = 0; i < iterations / 10; i++) {  // Warm-up
+            a[0] = (byte) rng.nextInt();
+            sink += CommutativeHashing.hash(function, a, b)[0];
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            a[0] = (byte) i;
+            sink += CommutativeHashing.hash(function, a, b)[0];
+        }
+        long elapsed = System.nanoTime() - start;
+        return (double) elapsed / iterations;
+    }
+}
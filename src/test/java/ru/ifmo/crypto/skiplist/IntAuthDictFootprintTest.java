@@ -0,0 +1,52 @@
+package ru.ifmo.crypto.skiplist;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Memory footprint benchmark for IntSkipList. Sizes are set by "footprint.sizes" property,
+ * e.g. -Dfootprint.sizes=1000000,10000000,50000000 (requires large heap).
+ */
+public class IntAuthDictFootprintTest {
+    private final int[] sizes = Arrays.stream(System.getProperty("footprint.sizes", "1000000").split(","))
+            .mapToInt(Integer::parseInt).toArray();
+
+    @Test
+    public void test_footprint() {
+        for (int size : sizes) {
+            tests_footprint(size);
+        }
+    }
+
+    private void tests_footprint(int dataSize) {
+        List<Integer> source = new ArrayList<>(dataSize);
+        for (int i = 0; i < dataSize; i++) {
+            source.add(i * 2);
+        }
+        long before = usedMemory();
+        IntAuthDict list = new IntAuthDict(source);
+        long measured = usedMemory() - before;
+        MemoryFootprint footprint = list.footprint();
+
+        assertEquals(dataSize + 2, footprint.getNodesPerLayer()[0]);
+        assertTrue(footprint.getEstimatedBytes() > 0);
+        System.out.println("Memory footprint of a skip list of size " + dataSize);
+        System.out.println(footprint);
+        System.out.printf("Measured: %d bytes, %.1f bytes per key%n", measured, (double) measured / dataSize);
+        System.out.println();
+        assertTrue(list.find(source.get(0)));  // Keeps list and source reachable during measurement
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,215 @@
+package ru.ifmo.crypto.skiplist;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Multi-threaded stress suite for IntAuthDict, AsyncIntAuthDict and SkipListValidator.
+ * Dictionary size, thread counts and number of operations are set by
+ * {@code stress.size}, {@code stress.threads} and {@code stress.operations} system properties.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class IntAuthDictStressTest {
+    private final int dataSize = Integer.getInteger("stress.size", 200000);
+    private final int operations = Integer.getInteger("stress.operations", 100000);
+    private final int[] threadCounts = Arrays.stream(System.getProperty("stress.threads", "1,2,4,8").split(","))
+            .mapToInt(Integer::parseInt).toArray();
+    private final int writePercent = 10;
+
+    private final Validator validator = new SkipListValidator();
+
+    @Test
+    public void test01_concurrentHashing() throws Exception {
+        Random rng = new Random();
+        byte[][] inputs = new byte[1000][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new byte[rng.nextInt(64)];
+            rng.nextBytes(inputs[i]);
+        }
+        byte[][] expected = new byte[inputs.length][];
+        for (int i = 0; i < inputs.length; i++) {
+            expected[i] = CommutativeHashing.SHA256(inputs[i], inputs[(i + 1) % inputs.length]);
+        }
+        int threads = Arrays.stream(threadCounts).max().orElse(1);
+        runConcurrently(threads, id -> {
+            for (int round = 0; round < 100; round++) {
+                for (int i = 0; i < inputs.length; i++) {
+                    int j = (i + id) % inputs.length;
+                    assertArrayEquals(expected[j], CommutativeHashing.SHA256(inputs[(j + 1) % inputs.length], inputs[j]));
+                }
+            }
+        });
+    }
+
+    @Test
+    public void test02_lockedDictionary() throws Exception {
+        System.out.println("Lock-guarded IntAuthDict of size " + dataSize + ", " + operations + " operations, "
+                + writePercent + "% updates");
+        for (int threads : threadCounts) {
+            long elapsed = lockedDictionary(threads);
+            printThroughput(threads, elapsed);
+        }
+        System.out.println();
+    }
+
+    @Test
+    public void test03_asyncService() throws Exception {
+        System.out.println("AsyncIntAuthDict of size " + dataSize + ", " + operations + " operations, "
+                + writePercent + "% updates");
+        for (int threads : threadCounts) {
+            long elapsed = asyncService(threads);
+            printThroughput(threads, elapsed);
+        }
+        System.out.println();
+    }
+
+    // Readers make proofs under read lock and validate them outside it,
+    // so validation of every proof runs concurrently with further updates
+    private long lockedDictionary(final int threads) throws Exception {
+        IntAuthDict list = new IntAuthDict(IntStream.range(0, dataSize).map(i -> 2 * i).boxed()
+                .collect(Collectors.toList()));
+        Set<Integer> elements = new HashSet<>();
+        for (int i = 0; i < dataSize; i++) {
+            elements.add(2 * i);
+        }
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        Map<Long, Confirmation> confirmations = new ConcurrentHashMap<>();
+        confirmations.put(list.getConfirmation().getTimestamp(), list.getConfirmation());
+        AtomicLong validated = new AtomicLong();
+        long startTime = System.currentTimeMillis();
+        runConcurrently(threads, id -> {
+            Random rng = new Random();
+            for (int i = id; i < operations; i += threads) {
+                int key = rng.nextInt(2 * dataSize);
+                if (rng.nextInt(100) < writePercent) {
+                    lock.writeLock().lock();
+                    try {
+                        if (rng.nextBoolean()) {
+                            list.insert(key);
+                            elements.add(key);
+                        } else {
+                            list.delete(key);
+                            elements.remove(key);
+                        }
+                        Confirmation conf = list.getConfirmation();
+                        confirmations.put(conf.getTimestamp(), conf);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                } else {
+                    Proof pr;
+                    boolean expected;
+                    lock.readLock().lock();
+                    try {
+                        pr = list.makeProof(key);
+                        expected = elements.contains(key);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                    assertEquals(expected, pr.isPresent());
+                    assertEquals(ValidationResult.CORRECT, validator.validate(pr, confirmations.get(pr.getTimestamp())));
+                    validated.incrementAndGet();
+                }
+            }
+        });
+        long elapsed = System.currentTimeMillis() - startTime;
+        assertEquals(elements.size(), list.size());
+        assertTrue(validated.get() > 0);
+        return elapsed;
+    }
+
+    // Every client owns keys equal to its id modulo number of clients, so its own updates
+    // determine the expected result of its proofs: proof requested after an update must observe it
+    private long asyncService(final int threads) throws Exception {
+        AsyncIntAuthDict service = new AsyncIntAuthDict(new IntAuthDict(IntStream.range(0, dataSize).boxed()
+                .collect(Collectors.toList())));
+        Map<Long, Confirmation> confirmations = new ConcurrentHashMap<>();
+        confirmations.put(service.getConfirmation().getTimestamp(), service.getConfirmation());
+        Queue<Proof> proofs = new ConcurrentLinkedQueue<>();
+        long startTime = System.currentTimeMillis();
+        runConcurrently(threads, id -> {
+            Random rng = new Random();
+            Set<Integer> removed = new HashSet<>();
+            List<CompletableFuture<Confirmation>> updates = new ArrayList<>();
+            for (int i = id; i < operations; i += threads) {
+                int key = rng.nextInt(dataSize / threads) * threads + id;
+                if (rng.nextInt(100) < writePercent) {
+                    if (rng.nextBoolean()) {
+                        updates.add(service.insert(key));
+                        removed.remove(key);
+                    } else {
+                        updates.add(service.delete(key));
+                        removed.add(key);
+                    }
+                } else {
+                    Proof pr = service.makeProof(key).get();
+                    assertEquals(!removed.contains(key), pr.isPresent());
+                    proofs.add(pr);
+                }
+            }
+            for (CompletableFuture<Confirmation> update : updates) {
+                Confirmation conf = update.get();
+                confirmations.put(conf.getTimestamp(), conf);
+            }
+        });
+        long elapsed = System.currentTimeMillis() - startTime;
+        service.close();
+        // Proof of batch without updates carries timestamp of the latest update batch
+        runConcurrently(threads, id -> {
+            for (Proof pr = proofs.poll(); pr != null; pr = proofs.poll()) {
+                assertEquals(ValidationResult.CORRECT, validator.validate(pr, confirmations.get(pr.getTimestamp())));
+            }
+        });
+        return elapsed;
+    }
+
+    private void printThroughput(final int threads, final long elapsed) {
+        System.out.println("Threads: " + threads + ", time: " + elapsed + " ms, throughput: "
+                + operations * 1000L / Math.max(elapsed, 1) + " ops/s");
+    }
+
+    private static void runConcurrently(final int threads, final Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int id = 0; id < threads; id++) {
+            final int workerId = id;
+            results.add(executor.submit(() -> {
+                start.await();
+                worker.run(workerId);
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof AssertionError) {
+                        throw (AssertionError) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Worker {
+        void run(int id) throws Exception;
+    }
+}
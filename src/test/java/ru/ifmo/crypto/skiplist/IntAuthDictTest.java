@@ -4,7 +4,14 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
 
@@ -14,7 +21,7 @@ import static org.junit.Assert.*;
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class IntAuthDictTest {
     private final Random rng = new Random();
-    private final Validator validator = new SkipListValidator();
+    private final CompactProofValidator validator = new SkipListValidator();
 
     // Functionality section (no cryptography tests)
 
@@ -298,6 +305,710 @@ public class IntAuthDictTest {
         assertEquals(ValidationResult.WRONG, validator.validate(pr, conf));
     }
 
+    // Iteration section
+
+    @Test
+    public void test19_iteration() {
+        Set<Integer> elements = new TreeSet<>();
+        IntAuthDict list = new IntAuthDict();
+        for (int i = 0; i < 10000; i++) {
+            int element = rng.nextInt();
+            elements.add(element);
+            list.insert(element);
+        }
+        List<Integer> actual = new ArrayList<>();
+        list.iterator().forEachRemaining((Integer x) -> actual.add(x));
+        assertEquals(new ArrayList<>(elements), actual);
+        assertEquals(elements.size(), list.size());
+        assertArrayEquals(elements.stream().mapToInt(x -> x).filter(x -> x >= 0).toArray(), list.stream(0).toArray());
+        assertEquals(0, new IntAuthDict().stream().count());
+        IntAuthDict duplicates = new IntAuthDict(List.of(1, 1, 2, -5, -5));
+        assertEquals(3, duplicates.size());
+        assertArrayEquals(new int[]{-5, 1, 2}, duplicates.stream().toArray());
+    }
+
+    @Test
+    public void test20_parallelStream() {
+        int[] source = rng.ints(200000).distinct().sorted().toArray();
+        IntAuthDict list = new IntAuthDict(Arrays.stream(source).boxed().collect(Collectors.toList()));
+        assertArrayEquals(source, list.stream().parallel().toArray());
+        int from = source[source.length / 3];
+        assertArrayEquals(Arrays.stream(source).filter(x -> x >= from).toArray(), list.stream(from).parallel().toArray());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void test21_iterationFailFast() {
+        IntAuthDict list = new IntAuthDict(List.of(1, 2, 3));
+        PrimitiveIterator.OfInt it = list.iterator();
+        it.nextInt();
+        list.insert(4);
+        it.nextInt();
+    }
+
+    // Synchronization section
+
+    @Test
+    public void test22_canonicalStructure() {
+        List<Integer> source = rng.ints(5000).boxed().distinct().collect(Collectors.toList());
+        IntAuthDict built = new IntAuthDict(source, 42);
+        IntAuthDict inserted = new IntAuthDict(42);
+        for (int i = source.size() - 1; i >= 0; i--) {
+            inserted.insert(source.get(i));
+        }
+        inserted.insert(17);
+        inserted.delete(17);
+        assertArrayEquals(built.getConfirmation().getHash(), inserted.getConfirmation().getHash());
+        Confirmation conf = inserted.getConfirmation();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(ValidationResult.CORRECT, validator.validate(inserted.makeProof(source.get(i)), conf));
+        }
+    }
+
+    @Test
+    public void test23_synchronization() {
+        List<Integer> source = rng.ints(100000).boxed().distinct().collect(Collectors.toList());
+        IntAuthDict primary = new IntAuthDict(source, 1349);
+        IntAuthDict replica = new IntAuthDict(source, 1349);
+        for (int i = 0; i < 20; i++) {
+            primary.insert(rng.nextInt());
+            primary.delete(source.get(i));
+            replica.insert(rng.nextInt());
+        }
+        SyncResult res = DictSynchronizer.synchronize(replica, new DictSyncPeer(primary));
+        assertArrayEquals(primary.getConfirmation().getHash(), replica.getConfirmation().getHash());
+        assertArrayEquals(primary.stream().toArray(), replica.stream().toArray());
+        assertEquals(20, res.getInserted());
+        assertEquals(40, res.getDeleted());
+        assertTrue(res.getTransferredDigests() < source.size() / 10);
+        assertEquals(1, DictSynchronizer.synchronize(replica, new DictSyncPeer(primary)).getRequests());
+    }
+
+    @Test
+    public void test24_nonCanonicalSynchronization() {
+        IntAuthDict primary = new IntAuthDict(rng.ints(3000).distinct().boxed().collect(Collectors.toList()));
+        IntAuthDict replica = new IntAuthDict(rng.ints(3000).distinct().boxed().collect(Collectors.toList()));
+        DictSynchronizer.synchronize(replica, new DictSyncPeer(primary));
+        assertArrayEquals(primary.stream().toArray(), replica.stream().toArray());
+    }
+
+    // Hash functions section
+
+    @Test
+    public void test25_blake2b() {
+        assertEquals("0e5751c026e543b2e8ab2eb06099daa1d1e5df47778f7787faab45cdf12fe3a8",
+                toHex(HashFunction.BLAKE2B_256.digest(new byte[]{})));
+        assertEquals("bddd813c634239723171ef3fee98579b94964e3bb1cb3e427262c8c068d52319",
+                toHex(HashFunction.BLAKE2B_256.digest(new byte[]{'a', 'b', 'c'})));
+        byte[] longInput = new byte[512];
+        for (int i = 0; i < longInput.length; i++) {
+            longInput[i] = (byte) i;
+        }
+        assertEquals("540b20132d8aeae54057cb69c24f95d26a1c472cc700dd450defe9bb796d4f14",
+                toHex(HashFunction.BLAKE2B_256.digest(longInput)));
+    }
+
+    @Test
+    public void test26_pluggableHashValidation() {
+        for (HashFunction function : List.of(HashFunction.SHA512_256, HashFunction.BLAKE2B_256)) {
+            IntAuthDict list = new IntAuthDict(function);
+            Validator functionValidator = new SkipListValidator(function);
+            for (int i = 0; i < 1000; i++) {
+                list.insert(rng.nextInt());
+            }
+            Confirmation conf = list.getConfirmation();
+            assertEquals(function.getName(), conf.getHashAlgorithm());
+            assertEquals(ValidationResult.CORRECT, functionValidator.validate(list.makeProof(rng.nextInt()), conf));
+            assertEquals(ValidationResult.WRONG, validator.validate(list.makeProof(rng.nextInt()), conf));
+        }
+        try {
+            new MessageDigestHashFunction("NO-SUCH-HASH");
+            fail("Unknown algorithm must be rejected on creation");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("NO-SUCH-HASH"));
+        }
+    }
+
+    @Test
+    public void test27_fastCompare() throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        for (int length : new int[]{0, 4, 32}) {
+            for (int i = 0; i < 10000; i++) {
+                byte[] s1 = new byte[length];
+                byte[] s2 = new byte[length];
+                rng.nextBytes(s1);
+                rng.nextBytes(s2);
+                if (rng.nextBoolean() && length > 0) {
+                    System.arraycopy(s1, 0, s2, 0, rng.nextInt(length));
+                }
+                assertEquals(Integer.signum(Arrays.compare(s1, s2)), Integer.signum(CommutativeHashing.compare(s1, s2)));
+                byte[] min = Arrays.compare(s1, s2) > 0 ? s2 : s1;
+                byte[] max = min == s1 ? s2 : s1;
+                sha256.update(min);
+                assertArrayEquals(sha256.digest(max), CommutativeHashing.SHA256(s1, s2));
+            }
+        }
+        byte[] key = new byte[]{0, 0, 0, 1};
+        byte[] digest = new byte[32];
+        assertArrayEquals(CommutativeHashing.SHA256(key, digest), CommutativeHashing.SHA256(digest, key));
+        assertArrayEquals(HashFunction.BLAKE2B_256.digest(new byte[]{'a', 'b', 'c'}),
+                HashFunction.BLAKE2B_256.digest(new byte[]{'a'}, new byte[]{'b', 'c'}));
+    }
+
+    // Snapshots section
+
+    @Test
+    public void test28_snapshot() {
+        List<Integer> source = rng.ints(10000).distinct().boxed().collect(Collectors.toList());
+        IntAuthDict list = new IntAuthDict(source);
+        IntAuthDict.Snapshot snapshot = list.snapshot();
+        Confirmation conf = snapshot.getConfirmation();
+        assertArrayEquals(list.getConfirmation().getHash(), conf.getHash());
+        IntAuthDict.Snapshot later = null;
+        for (int i = 0; i < 2000; i++) {
+            list.insert(rng.nextInt());
+            list.delete(source.get(i));
+            if (i == 1000) {
+                later = list.snapshot();
+            }
+            if (i % 100 == 0) {
+                assertEquals(ValidationResult.CORRECT, validator.validate(snapshot.makeProof(source.get(i)), conf));
+            }
+        }
+        for (int i = 0; i < 3000; i++) {
+            assertTrue(snapshot.find(source.get(i)));
+            assertEquals(ValidationResult.CORRECT, validator.validate(snapshot.makeProof(source.get(i)), conf));
+        }
+        assertFalse(later.find(source.get(0)));
+        assertEquals(ValidationResult.CORRECT, validator.validate(later.makeProof(source.get(1500)), later.getConfirmation()));
+        assertEquals(ValidationResult.OUTDATED, validator.validate(snapshot.makeProof(1), list.getConfirmation()));
+        snapshot.close();
+        later.close();
+        list.insert(1);
+        assertEquals(ValidationResult.CORRECT, validator.validate(list.makeProof(1), list.getConfirmation()));
+    }
+
+    // Asynchronous service section
+
+    @Test
+    public void test29_asyncUpdates() throws Exception {
+        AsyncIntAuthDict service = new AsyncIntAuthDict(new IntAuthDict(), 128, 32);
+        Set<Integer> elements = new HashSet<>();
+        List<CompletableFuture<Confirmation>> updates = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int element = rng.nextInt(10000);
+            if (rng.nextInt(3) == 0) {
+                elements.remove(element);
+                updates.add(service.delete(element));
+            } else {
+                elements.add(element);
+                updates.add(service.insert(element));
+            }
+        }
+        updates.add(service.insert(-1));
+        updates.add(service.delete(-1));
+        updates.add(service.insert(-1));
+        elements.add(-1);
+        Set<Long> batchTimestamps = new HashSet<>();
+        for (CompletableFuture<Confirmation> update : updates) {
+            batchTimestamps.add(update.get().getTimestamp());
+        }
+        // Every batch is applied with single timestamp
+        assertTrue(service.getConfirmation().getTimestamp() <= batchTimestamps.size());
+        List<CompletableFuture<Proof>> proofs = new ArrayList<>();
+        for (int i = -1; i < 10000; i++) {
+            proofs.add(service.makeProof(i));
+        }
+        Confirmation conf = service.getConfirmation();
+        for (int i = -1; i < 10000; i++) {
+            Proof pr = proofs.get(i + 1).get();
+            assertEquals(elements.contains(i), pr.isPresent());
+            assertEquals(ValidationResult.CORRECT, validator.validate(pr, conf));
+        }
+        service.close();
+        assertTrue(service.insert(1).isCompletedExceptionally());
+    }
+
+    // Compact proofs section
+
+    @Test
+    public void test30_compactProof() {
+        IntAuthDict list = new IntAuthDict();
+        Set<Integer> elements = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            int element = rng.nextInt(100000);
+            elements.add(element);
+            list.insert(element);
+        }
+        Confirmation conf = list.getConfirmation();
+        long compactSize = 0;
+        long plainSize = 0;
+        for (int i = -10; i < 100010; i += 7) {
+            CompactProof pr = CompactProof.decode(list.makeCompactProof(i).encode());
+            assertEquals(elements.contains(i), pr.isPresent());
+            assertEquals(ValidationResult.CORRECT, validator.validate(pr, conf));
+            compactSize += pr.encode().length;
+            // Flags, element, timestamp, algorithm and length-prefixed sequence
+            plainSize += 1 + 4 + 8 + 1 + conf.getHashAlgorithm().length() + 1;
+            for (byte[] entry : list.makeProof(i).getSequence()) {
+                plainSize += entry.length + 1;
+            }
+        }
+        assertTrue(compactSize < plainSize);
+        assertEquals(ValidationResult.CORRECT, validator.validate(new IntAuthDict().makeCompactProof(1),
+                new IntAuthDict().getConfirmation()));
+    }
+
+    @Test
+    public void test31_compactProofForgedClaim() {
+        IntAuthDict list = new IntAuthDict(List.of(2, 3, 5, 7, 11, 13));
+        Confirmation conf = list.getConfirmation();
+        for (int key : new int[]{5, 6}) {
+            byte[] bytes = list.makeCompactProof(key).encode();
+            bytes[0] ^= 1;  // Present flag
+            assertEquals(ValidationResult.WRONG, validator.validate(CompactProof.decode(bytes), conf));
+        }
+        byte[] bytes = list.makeCompactProof(5).encode();
+        bytes[4] = 6;  // Element
+        assertEquals(ValidationResult.WRONG, validator.validate(CompactProof.decode(bytes), conf));
+    }
+
+    // Memory footprint section
+
+    @Test
+    public void test32_footprint() {
+        IntAuthDict list = new IntAuthDict();
+        for (int i = 0; i < 1000; i++) {
+            list.insert(i);
+        }
+        MemoryFootprint footprint = list.footprint();
+        long[] layers = footprint.getNodesPerLayer();
+        assertEquals(1002, layers[0]);
+        assertEquals(2, layers[layers.length - 1]);
+        assertEquals(2 * layers.length, footprint.getSentinels());
+        assertTrue(footprint.getHashArrays() >= 1000);
+        assertEquals(0, footprint.getVersions());
+        IntAuthDict.Snapshot snapshot = list.snapshot();
+        list.insert(1000);
+        assertTrue(list.footprint().getVersions() > 0);
+        snapshot.close();
+        assertEquals(0, list.footprint().getVersions());
+    }
+
+    // Unrolled layout section
+
+    @Test
+    public void test33_unrolledRandomOperations() {
+        List<Integer> source = rng.ints(2000, -5000, 5000).boxed().collect(Collectors.toList());
+        UnrolledIntAuthDict list = new UnrolledIntAuthDict(source);
+        Set<Integer> keys = new HashSet<>(source);
+        for (int i = 0; i < 10000; i++) {
+            int x = rng.nextInt(10000) - 5000;
+            if (rng.nextBoolean()) {
+                list.insert(x);
+                keys.add(x);
+            } else {
+                list.delete(x);
+                keys.remove(x);
+            }
+            if (i % 100 == 0) {
+                int y = rng.nextInt(10000) - 5000;
+                assertEquals(keys.contains(y), list.find(y));
+                Proof proof = list.makeProof(y);
+                assertEquals(keys.contains(y), proof.isPresent());
+                assertEquals(ValidationResult.CORRECT, validator.validate(proof, list.getConfirmation()));
+            }
+        }
+        assertEquals(keys.size(), list.size());
+        for (int x = -5000; x < 5000; x++) {
+            assertEquals(keys.contains(x), list.find(x));
+        }
+    }
+
+    @Test
+    public void test34_unrolledCanonicalEquivalence() {
+        List<Integer> source = rng.ints(1000, 0, 4000).distinct().boxed().collect(Collectors.toList());
+        IntAuthDict list = new IntAuthDict(source, 42L);
+        UnrolledIntAuthDict unrolled = new UnrolledIntAuthDict(source, 42L);
+        assertArrayEquals(list.getConfirmation().getHash(), unrolled.getConfirmation().getHash());
+        for (int i = 0; i < 4000; i++) {
+            int x = rng.nextInt(4000);
+            if (rng.nextBoolean()) {
+                list.insert(x);
+                unrolled.insert(x);
+            } else {
+                list.delete(x);
+                unrolled.delete(x);
+            }
+            assertArrayEquals(list.getConfirmation().getHash(), unrolled.getConfirmation().getHash());
+        }
+        for (int x = -1; x <= 4000; x += 7) {
+            List<byte[]> expected = list.makeProof(x).getSequence();
+            List<byte[]> actual = unrolled.makeProof(x).getSequence();
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertArrayEquals(expected.get(j), actual.get(j));
+            }
+        }
+        assertArrayEquals(new IntAuthDict(42L).getConfirmation().getHash(),
+                new UnrolledIntAuthDict(42L).getConfirmation().getHash());
+    }
+
+    // Batch updates section
+
+    @Test
+    public void test35_parallelRehash() {
+        List<Integer> source = rng.ints(200000).distinct().boxed().collect(Collectors.toList());
+        IntAuthDict list = new IntAuthDict(source, 42L);
+        assertArrayEquals(new UnrolledIntAuthDict(source, 42L).getConfirmation().getHash(),
+                list.getConfirmation().getHash());
+        Confirmation conf = list.getConfirmation();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ValidationResult.CORRECT, validator.validate(list.makeProof(source.get(i)), conf));
+        }
+    }
+
+    @Test
+    public void test36_batchUpdates() {
+        IntAuthDict list = new IntAuthDict(42L);
+        IntAuthDict expected = new IntAuthDict(42L);
+        Set<Integer> elements = new HashSet<>();
+        for (int batchSize : new int[]{10, 1000, 100000}) {
+            List<Integer> inserted = rng.ints(batchSize, 0, 400000).boxed().collect(Collectors.toList());
+            List<Integer> deleted = new ArrayList<>(elements).subList(0, elements.size() / 2);
+            long timestamp = list.getConfirmation().getTimestamp();
+            IntAuthDict.Snapshot snapshot = list.snapshot();
+            Proof before = list.makeProof(inserted.get(0));
+            list.deleteAll(deleted);
+            list.insertAll(inserted);
+            deleted.forEach(expected::delete);
+            inserted.forEach(expected::insert);
+            elements.removeAll(deleted);
+            elements.addAll(inserted);
+            assertEquals(timestamp + (deleted.isEmpty() ? 1 : 2), list.getConfirmation().getTimestamp());
+            assertEquals(elements.size(), list.size());
+            assertArrayEquals(expected.getConfirmation().getHash(), list.getConfirmation().getHash());
+            assertEquals(ValidationResult.CORRECT, validator.validate(snapshot.makeProof(inserted.get(0)),
+                    snapshot.getConfirmation()));
+            assertArrayEquals(before.getSequence().toArray(), snapshot.makeProof(inserted.get(0)).getSequence().toArray());
+            snapshot.close();
+        }
+        Confirmation conf = list.getConfirmation();
+        for (int i = 0; i < 1000; i++) {
+            int x = rng.nextInt(400000);
+            Proof pr = list.makeProof(x);
+            assertEquals(elements.contains(x), pr.isPresent());
+            assertEquals(ValidationResult.CORRECT, validator.validate(pr, conf));
+        }
+        IntAuthDict unchanged = new IntAuthDict(List.of(1, 2, 3));
+        unchanged.insertAll(List.of(1, 2));
+        unchanged.deleteAll(List.of(4));
+        assertEquals(0, unchanged.getConfirmation().getTimestamp());
+    }
+
+    @Test
+    public void test37_rangeDeletion() {
+        List<Integer> source = rng.ints(20000, -50000, 50000).distinct().boxed().collect(Collectors.toList());
+        IntAuthDict list = new IntAuthDict(source, 42L);
+        IntAuthDict expected = new IntAuthDict(source, 42L);
+        TreeSet<Integer> elements = new TreeSet<>(source);
+        Confirmation oldConf = list.getConfirmation();
+        IntAuthDict.Snapshot snapshot = list.snapshot();
+        int[][] ranges = {{-10000, 10000}, {-60000, -45000}, {45000, 60000}, {0, 0}, {-100, 100}};
+        for (int[] range : ranges) {
+            int count = elements.subSet(range[0], range[1]).size();
+            long timestamp = list.getConfirmation().getTimestamp();
+            assertEquals(count, list.deleteRange(range[0], range[1]));
+            new ArrayList<>(elements.subSet(range[0], range[1])).forEach(expected::delete);
+            elements.subSet(range[0], range[1]).clear();
+            assertEquals(timestamp + (count > 0 ? 1 : 0), list.getConfirmation().getTimestamp());
+            assertEquals(elements.size(), list.size());
+            assertArrayEquals(expected.getConfirmation().getHash(), list.getConfirmation().getHash());
+        }
+        assertEquals(0, list.deleteRange(5, -5));
+        assertEquals(elements.size(), list.retainRange(-30000, 30000) + elements.subSet(-30000, 30000).size());
+        elements.retainAll(elements.subSet(-30000, 30000));
+        new ArrayList<>(expected.stream().boxed().collect(Collectors.toList())).stream()
+                .filter(x -> !elements.contains(x)).forEach(expected::delete);
+        assertArrayEquals(expected.getConfirmation().getHash(), list.getConfirmation().getHash());
+        assertEquals(elements, list.stream().boxed().collect(Collectors.toSet()));
+        Confirmation conf = list.getConfirmation();
+        for (int x = -50000; x < 50000; x += 97) {
+            Proof pr = list.makeProof(x);
+            assertEquals(elements.contains(x), pr.isPresent());
+            assertEquals(ValidationResult.CORRECT, validator.validate(pr, conf));
+            assertEquals(ValidationResult.CORRECT, validator.validate(snapshot.makeProof(x), oldConf));
+        }
+        snapshot.close();
+        assertEquals(elements.size(), list.retainRange(1, 0));
+        elements.forEach(expected::delete);
+        assertEquals(0, list.size());
+        assertArrayEquals(expected.getConfirmation().getHash(), list.getConfirmation().getHash());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void test38_splitFailFast() {
+        IntAuthDict list = new IntAuthDict(IntStream.range(0, 10000).boxed().collect(Collectors.toList()));
+        Spliterator.OfInt spliterator = list.spliterator();
+        list.insert(10000);
+        Spliterator.OfInt prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        prefix.forEachRemaining((int x) -> {
+        });
+    }
+
+    @Test
+    public void test39_asyncCloseRace() throws Exception {
+        for (int run = 0; run < 50; run++) {
+            AsyncIntAuthDict service = new AsyncIntAuthDict(new IntAuthDict(), 64, 16);
+            List<CompletableFuture<Confirmation>> updates = Collections.synchronizedList(new ArrayList<>());
+            Thread client = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    updates.add(service.insert(i));
+                }
+            });
+            client.start();
+            if (run % 2 == 0) {
+                service.close();
+            } else {
+                Thread.currentThread().interrupt();
+                service.close();
+                assertTrue(Thread.interrupted());
+            }
+            client.join();
+            for (CompletableFuture<Confirmation> update : updates) {
+                try {
+                    update.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+            }
+            assertTrue(service.insert(-1).isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    public void test40_compactProofSwappedSuccessor() {
+        List<Integer> source = rng.ints(200, 0, 100000).distinct().sorted().boxed().collect(Collectors.toList());
+        IntAuthDict list = new IntAuthDict(source, 42L);
+        Confirmation conf = list.getConfirmation();
+        int attempts = 0;
+        for (int i = 1; i + 1 < source.size(); i++) {
+            int prev = source.get(i - 1);
+            int key = source.get(i);
+            int next = source.get(i + 1);
+            // Proof of prev with successor key, expanded by the key after it
+            CompactProof genuine = list.makeCompactProof(prev);
+            if (!genuine.isExpandedSuccessor() || genuine.getKind(0) != CompactProof.KEY
+                    || genuine.getKind(1) != CompactProof.KEY) {
+                continue;
+            }
+            attempts++;
+            // Claim: key is absent, next is its successor, expanded by key itself
+            for (boolean asHash : new boolean[]{false, true}) {
+                CompactProof.Builder builder = new CompactProof.Builder();
+                builder.addKey(next);
+                if (asHash) {
+                    builder.addHash(new byte[]{(byte) (key >>> 24), (byte) (key >>> 16), (byte) (key >>> 8), (byte) key});
+                } else {
+                    builder.addKey(key);
+                }
+                builder.addKey(prev);
+                int keyIndex = 2;
+                int hashIndex = 0;
+                for (int j = 2; j < genuine.getLength(); j++) {
+                    switch (genuine.getKind(j)) {
+                        case CompactProof.KEY:
+                            builder.addKey(genuine.getKeys()[keyIndex++]);
+                            break;
+                        case CompactProof.HASH:
+                            builder.addHash(genuine.getHashes()[hashIndex++]);
+                            break;
+                        default:
+                            builder.addNil();
+                    }
+                }
+                CompactProof forged = builder.build(key, genuine.getTimestamp(), false, true, genuine.getHashAlgorithm());
+                assertEquals(ValidationResult.WRONG, validator.validate(forged, conf));
+            }
+        }
+        assertTrue(attempts > 0);
+    }
+
+    @Test
+    public void test41_compactProofHeadSentinel() {
+        IntAuthDict list = new IntAuthDict(List.of(10, 20, 30, 40, 50));
+        Confirmation conf = list.getConfirmation();
+        CompactProof genuine = list.makeCompactProof(5);
+        assertEquals(ValidationResult.CORRECT, validator.validate(genuine, conf));
+        // Claim: MIN_VALUE is present, its own key replaces the head sentinel as predecessor of 10
+        int predecessor = genuine.isExpandedSuccessor() ? 2 : 1;
+        assertEquals(CompactProof.KEY, genuine.getKind(predecessor));
+        CompactProof.Builder builder = new CompactProof.Builder();
+        int keyIndex = 0;
+        int hashIndex = 0;
+        for (int j = 0; j < genuine.getLength(); j++) {
+            switch (genuine.getKind(j)) {
+                case CompactProof.KEY:
+                    int key = genuine.getKeys()[keyIndex++];
+                    if (j != predecessor) {
+                        builder.addKey(key);
+                    }
+                    break;
+                case CompactProof.HASH:
+                    builder.addHash(genuine.getHashes()[hashIndex++]);
+                    break;
+                default:
+                    builder.addNil();
+            }
+        }
+        CompactProof forged = builder.build(Integer.MIN_VALUE, genuine.getTimestamp(), true,
+                genuine.isExpandedSuccessor(), genuine.getHashAlgorithm());
+        assertEquals(ValidationResult.WRONG, validator.validate(forged, conf));
+        Proof plain = list.makeProof(5);
+        Proof forgedPlain = new Proof(Integer.MIN_VALUE, plain.getTimestamp(), plain.getSequence(), true,
+                plain.getHashAlgorithm());
+        assertEquals(ValidationResult.CORRECT, validator.validate(plain, conf));
+        assertEquals(ValidationResult.WRONG, validator.validate(forgedPlain, conf));
+        // Key of head sentinel is reserved
+        List<Runnable> rejected = List.of(
+                () -> list.insert(Integer.MIN_VALUE),
+                () -> list.insertAll(List.of(1, Integer.MIN_VALUE)),
+                () -> list.makeProof(Integer.MIN_VALUE),
+                () -> list.makeCompactProof(Integer.MIN_VALUE),
+                () -> new IntAuthDict(List.of(1, Integer.MIN_VALUE)),
+                () -> new UnrolledIntAuthDict(List.of(Integer.MIN_VALUE), 42L),
+                () -> new UnrolledIntAuthDict().insert(Integer.MIN_VALUE));
+        for (Runnable action : rejected) {
+            try {
+                action.run();
+                fail("Integer.MIN_VALUE must be rejected");
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        assertFalse(list.find(1));
+        assertEquals(conf.getTimestamp(), list.getConfirmation().getTimestamp());
+        list.delete(Integer.MIN_VALUE);
+        assertEquals(5, list.size());
+    }
+
+    @Test
+    public void test42_unrolledDeleteAll() {
+        List<Integer> source = IntStream.range(0, 3000).boxed().collect(Collectors.toList());
+        for (int run = 0; run < 8; run++) {
+            long seed = rng.nextLong();
+            List<Integer> order = new ArrayList<>(source);
+            if (run % 2 == 1) {
+                Collections.shuffle(order, rng);
+            }
+            UnrolledIntAuthDict unrolled = run < 4 ? new UnrolledIntAuthDict(source) : new UnrolledIntAuthDict(source, seed);
+            IntAuthDict list = new IntAuthDict(source, seed);
+            for (int i = 0; i < order.size(); i++) {
+                unrolled.delete(order.get(i));
+                list.delete(order.get(i));
+                assertFalse(unrolled.find(order.get(i)));
+                if (i % 300 == 0) {
+                    int x = order.get(i + 1);
+                    assertTrue(unrolled.find(x));
+                    assertEquals(ValidationResult.CORRECT, validator.validate(unrolled.makeProof(x), unrolled.getConfirmation()));
+                    if (run >= 4) {
+                        assertArrayEquals(list.getConfirmation().getHash(), unrolled.getConfirmation().getHash());
+                    }
+                }
+            }
+            assertEquals(0, unrolled.size());
+            if (run >= 4) {
+                assertArrayEquals(list.getConfirmation().getHash(), unrolled.getConfirmation().getHash());
+            }
+        }
+    }
+
+    @Test
+    public void test43_emptiedCanonicalSynchronization() {
+        List<Integer> source = rng.ints(2000).boxed().distinct().collect(Collectors.toList());
+        IntAuthDict replica = new IntAuthDict(source, 42L);
+        IntAuthDict fresh = new IntAuthDict(42L);
+        assertArrayEquals(new IntAuthDict(Collections.emptyList(), 42L).getConfirmation().getHash(),
+                fresh.getConfirmation().getHash());
+        assertArrayEquals(new UnrolledIntAuthDict(42L).getConfirmation().getHash(), fresh.getConfirmation().getHash());
+        SyncResult res = DictSynchronizer.synchronize(replica, new DictSyncPeer(fresh));
+        assertEquals(0, replica.size());
+        assertEquals(source.size(), res.getDeleted());
+        assertArrayEquals(fresh.getConfirmation().getHash(), replica.getConfirmation().getHash());
+        assertEquals(1, DictSynchronizer.synchronize(replica, new DictSyncPeer(fresh)).getRequests());
+        // Emptied dictionary also synchronizes fresh one back
+        IntAuthDict emptied = new IntAuthDict(source, 42L);
+        emptied.deleteAll(source);
+        IntAuthDict other = new IntAuthDict(42L);
+        other.insert(source.get(0));
+        other.delete(source.get(0));
+        assertArrayEquals(emptied.getConfirmation().getHash(), other.getConfirmation().getHash());
+        assertEquals(1, DictSynchronizer.synchronize(other, new DictSyncPeer(emptied)).getRequests());
+    }
+
+    @Test
+    public void test44_overlappingSnapshotsVersions() {
+        List<Integer> source = rng.ints(5000).distinct().boxed().collect(Collectors.toList());
+        List<Integer> updates = rng.ints(3000).boxed().collect(Collectors.toList());
+        IntAuthDict rolling = new IntAuthDict(source, 7L);
+        IntAuthDict single = new IntAuthDict(source, 7L);
+        IntAuthDict.Snapshot first = rolling.snapshot();
+        Deque<IntAuthDict.Snapshot> open = new ArrayDeque<>(List.of(first));
+        IntAuthDict.Snapshot last = null;
+        for (int i = 0; i < updates.size(); i++) {
+            if (i % 500 == 0 && i > 0) {
+                // Next snapshot is taken before the previous one is closed
+                open.addLast(rolling.snapshot());
+                open.removeFirst().close();
+                if (last != null) {
+                    last.close();
+                }
+                last = single.snapshot();
+                assertEquals(single.footprint().getVersions(), rolling.footprint().getVersions());
+            }
+            rolling.insert(updates.get(i));
+            rolling.delete(source.get(i));
+            single.insert(updates.get(i));
+            single.delete(source.get(i));
+        }
+        assertEquals(single.footprint().getVersions(), rolling.footprint().getVersions());
+        IntAuthDict.Snapshot latest = open.getLast();
+        assertEquals(ValidationResult.CORRECT, validator.validate(latest.makeProof(source.get(2600)), latest.getConfirmation()));
+        assertEquals(ValidationResult.CORRECT, validator.validate(last.makeProof(source.get(2400)), last.getConfirmation()));
+        latest.close();
+        last.close();
+        assertEquals(0, rolling.footprint().getVersions());
+    }
+
+    @Test
+    public void test45_updateAll() {
+        List<Integer> source = rng.ints(5000).distinct().boxed().collect(Collectors.toList());
+        IntAuthDict batched = new IntAuthDict(source, 11L);
+        IntAuthDict single = new IntAuthDict(source, 11L);
+        List<Integer> deleted = new ArrayList<>(source.subList(0, 1000));
+        deleted.add(rng.nextInt());
+        List<Integer> inserted = rng.ints(1000).boxed().collect(Collectors.toList());
+        inserted.add(source.get(0));  // Deleted and inserted back
+        long timestamp = batched.getConfirmation().getTimestamp();
+        batched.updateAll(deleted, inserted);
+        deleted.forEach(single::delete);
+        inserted.forEach(single::insert);
+        assertEquals(timestamp + 1, batched.getConfirmation().getTimestamp());
+        assertEquals(single.size(), batched.size());
+        assertTrue(batched.find(source.get(0)));
+        assertArrayEquals(single.getConfirmation().getHash(), batched.getConfirmation().getHash());
+        assertEquals(ValidationResult.CORRECT, validator.validate(batched.makeProof(source.get(1)), batched.getConfirmation()));
+        batched.updateAll(Collections.emptyList(), Collections.emptyList());
+        assertEquals(timestamp + 1, batched.getConfirmation().getTimestamp());
+    }
+
+    private static String toHex(final byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
     private <T> T getRandomElement(final Set<T> s) {
         return s.stream().skip(rng.nextInt(s.size())).findFirst().get();
     }